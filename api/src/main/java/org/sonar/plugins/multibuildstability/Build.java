@@ -62,6 +62,11 @@ public class Build {
    */
   private Boolean successful;
 
+  /**
+   * True, if build still in progress, so its result and duration will change.
+   */
+  private boolean building;
+
   /**
    * Build duration in millisec. Required for metrics calculation.
    * TODO we really need value in milliseconds?
@@ -120,6 +125,15 @@ public class Build {
     return this;
   }
 
+  public boolean isBuilding() {
+    return building;
+  }
+
+  public Build setBuilding(boolean building) {
+    this.building = building;
+    return this;
+  }
+
   public double getDuration() {
     return duration;
   }
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+
+/**
+ * Builds of one job in columns of primitives, ordered by number. Each build number occurs only once.
+ * Much more compact than list of {@link Build}s, so should be used to keep long histories.
+ */
+public final class BuildHistory {
+  private final int size;
+  private final int[] numbers;
+  private final long[] timestamps;
+  /**
+   * Durations in milliseconds.
+   */
+  private final int[] durations;
+  private final BitSet successful;
+  private final BitSet building;
+
+  private BuildHistory(int size, int[] numbers, long[] timestamps, int[] durations, BitSet successful, BitSet building) {
+    this.size = size;
+    this.numbers = numbers;
+    this.timestamps = timestamps;
+    this.durations = durations;
+    this.successful = successful;
+    this.building = building;
+  }
+
+  public static BuildHistory of(Collection<Build> builds) {
+    Builder builder = new Builder(builds.size());
+    for (Build build : builds) {
+      builder.add(build);
+    }
+    return builder.build();
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public int getNumber(int index) {
+    checkIndex(index);
+    return numbers[index];
+  }
+
+  public long getTimestamp(int index) {
+    checkIndex(index);
+    return timestamps[index];
+  }
+
+  /**
+   * @return duration in milliseconds
+   */
+  public int getDuration(int index) {
+    checkIndex(index);
+    return durations[index];
+  }
+
+  public boolean isSuccessful(int index) {
+    checkIndex(index);
+    return successful.get(index);
+  }
+
+  /**
+   * @return true, if build was in progress, when retrieved, so its result isn't known yet
+   */
+  public boolean isBuilding(int index) {
+    checkIndex(index);
+    return building.get(index);
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+    }
+  }
+
+  /**
+   * Collects builds in any order, e.g. newest first, like they are retrieved from CI server.
+   */
+  public static final class Builder {
+    private int size;
+    private int[] numbers;
+    private long[] timestamps;
+    private int[] durations;
+    private BitSet successful = new BitSet();
+    private BitSet building = new BitSet();
+
+    public Builder() {
+      this(16);
+    }
+
+    public Builder(int expectedSize) {
+      int capacity = Math.max(1, expectedSize);
+      numbers = new int[capacity];
+      timestamps = new long[capacity];
+      durations = new int[capacity];
+    }
+
+    public Builder add(Build build) {
+      long duration = Math.round(build.getDuration());
+      return add(build.getNumber(), build.getTimestamp(), (int) Math.max(0, Math.min(Integer.MAX_VALUE, duration)), build.isSuccessful(), build.isBuilding());
+    }
+
+    /**
+     * @param duration in milliseconds
+     */
+    public Builder add(int number, long timestamp, int duration, boolean successful) {
+      return add(number, timestamp, duration, successful, false);
+    }
+
+    /**
+     * If build with same number added several times, then last one wins.
+     *
+     * @param duration in milliseconds
+     * @param building true, if build is still in progress
+     */
+    public Builder add(int number, long timestamp, int duration, boolean successful, boolean building) {
+      if (number < 0) {
+        throw new IllegalArgumentException("Negative build number: " + number);
+      }
+      if (size == numbers.length) {
+        int capacity = size * 2;
+        numbers = Arrays.copyOf(numbers, capacity);
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        durations = Arrays.copyOf(durations, capacity);
+      }
+      numbers[size] = number;
+      timestamps[size] = timestamp;
+      durations[size] = duration;
+      this.successful.set(size, successful);
+      this.building.set(size, building);
+      size++;
+      return this;
+    }
+
+    /**
+     * Sorts collected builds by number. Builder shouldn't be used after this.
+     */
+    public BuildHistory build() {
+      if (isStrictlyAscending()) {
+        return new BuildHistory(size, numbers, timestamps, durations, successful, building);
+      }
+      // number in high bits and position in low bits, so equal numbers stay in order of addition
+      long[] keys = new long[size];
+      for (int i = 0; i < size; i++) {
+        keys[i] = ((long) numbers[i] << 32) | i;
+      }
+      Arrays.sort(keys);
+
+      int[] sortedNumbers = new int[size];
+      long[] sortedTimestamps = new long[size];
+      int[] sortedDurations = new int[size];
+      BitSet sortedSuccessful = new BitSet(size);
+      BitSet sortedBuilding = new BitSet(size);
+      int count = 0;
+      for (int k = 0; k < size; k++) {
+        int i = (int) keys[k];
+        if (k + 1 < size && (int) (keys[k + 1] >>> 32) == numbers[i]) {
+          // replaced by build added later
+          continue;
+        }
+        sortedNumbers[count] = numbers[i];
+        sortedTimestamps[count] = timestamps[i];
+        sortedDurations[count] = durations[i];
+        sortedSuccessful.set(count, successful.get(i));
+        sortedBuilding.set(count, building.get(i));
+        count++;
+      }
+      return new BuildHistory(count, sortedNumbers, sortedTimestamps, sortedDurations, sortedSuccessful, sortedBuilding);
+    }
+
+    private boolean isStrictlyAscending() {
+      for (int i = 1; i < size; i++) {
+        if (numbers[i - 1] >= numbers[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Numbers, durations and results of builds shown on chart, in order of addition.
+ * Kept in measures in form of {@link BuildSeriesCodec}.
+ */
+public final class BuildSeries {
+  private int size;
+  private int[] numbers;
+  /**
+   * Durations in milliseconds.
+   */
+  private int[] durations;
+  private final BitSet successful = new BitSet();
+
+  public BuildSeries() {
+    this(16);
+  }
+
+  public BuildSeries(int expectedSize) {
+    int capacity = Math.max(1, expectedSize);
+    numbers = new int[capacity];
+    durations = new int[capacity];
+  }
+
+  /**
+   * @param duration in milliseconds, negative durations are stored as zero
+   */
+  public BuildSeries add(int number, int duration, boolean successful) {
+    if (size == numbers.length) {
+      int capacity = size * 2;
+      numbers = Arrays.copyOf(numbers, capacity);
+      durations = Arrays.copyOf(durations, capacity);
+    }
+    numbers[size] = number;
+    durations[size] = Math.max(0, duration);
+    this.successful.set(size, successful);
+    size++;
+    return this;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public int getNumber(int index) {
+    checkIndex(index);
+    return numbers[index];
+  }
+
+  /**
+   * @return duration in milliseconds
+   */
+  public int getDuration(int index) {
+    checkIndex(index);
+    return durations[index];
+  }
+
+  public boolean isSuccessful(int index) {
+    checkIndex(index);
+    return successful.get(index);
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+    }
+  }
+}
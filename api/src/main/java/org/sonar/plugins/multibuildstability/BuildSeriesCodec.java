@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Compact text form of {@link BuildSeries}, which is several times shorter than list of "number=value;" pairs:
+ * <ul>
+ * <li>number of builds;</li>
+ * <li>build numbers, first one as is and others as difference from previous one;</li>
+ * <li>durations rounded to {@link #QUANTUM} milliseconds;</li>
+ * <li>results as lengths of alternating runs of successful and failed builds, starting with successful ones.</li>
+ * </ul>
+ * All values are variable-length integers (7 bits per byte, signed ones in zigzag form),
+ * bytes are encoded in URL-safe Base64 without padding, so series can be passed to chart as is.
+ */
+public final class BuildSeriesCodec {
+  /**
+   * Precision of durations in milliseconds.
+   */
+  public static final int QUANTUM = 100;
+
+  private static final int VERSION = 1;
+
+  private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+  private static final int[] INDEX = new int[128];
+
+  static {
+    Arrays.fill(INDEX, -1);
+    for (int i = 0; i < ALPHABET.length; i++) {
+      INDEX[ALPHABET[i]] = i;
+    }
+  }
+
+  private BuildSeriesCodec() {
+  }
+
+  public static String encode(BuildSeries series) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(16 + series.size() * 3);
+    writeVarint(out, VERSION);
+    writeVarint(out, series.size());
+    int previous = 0;
+    for (int i = 0; i < series.size(); i++) {
+      writeVarint(out, zigzag(series.getNumber(i) - previous));
+      previous = series.getNumber(i);
+    }
+    for (int i = 0; i < series.size(); i++) {
+      writeVarint(out, (series.getDuration(i) + QUANTUM / 2) / QUANTUM);
+    }
+    boolean successful = true;
+    int run = 0;
+    for (int i = 0; i < series.size(); i++) {
+      if (series.isSuccessful(i) != successful) {
+        writeVarint(out, run);
+        successful = !successful;
+        run = 0;
+      }
+      run++;
+    }
+    if (run > 0) {
+      writeVarint(out, run);
+    }
+    return toBase64(out.toByteArray());
+  }
+
+  /**
+   * @throws IllegalArgumentException if given text isn't produced by {@link #encode(BuildSeries)}
+   */
+  public static BuildSeries decode(String text) {
+    Reader in = new Reader(fromBase64(text));
+    int version = in.readVarint();
+    if (version != VERSION) {
+      throw new IllegalArgumentException("Unsupported version of build series: " + version);
+    }
+    int size = in.readVarint();
+    if (size < 0 || size > in.remaining()) {
+      // each build takes at least two bytes
+      throw new IllegalArgumentException("Incorrect build series: " + size + " builds");
+    }
+    int[] numbers = new int[size];
+    int previous = 0;
+    for (int i = 0; i < size; i++) {
+      numbers[i] = previous + unzigzag(in.readVarint());
+      previous = numbers[i];
+    }
+    int[] durations = new int[size];
+    for (int i = 0; i < size; i++) {
+      durations[i] = (int) Math.min(Integer.MAX_VALUE, (long) in.readVarint() * QUANTUM);
+    }
+    BuildSeries series = new BuildSeries(size);
+    boolean successful = true;
+    int i = 0;
+    while (i < size) {
+      int run = in.readVarint();
+      if (run > size - i) {
+        throw new IllegalArgumentException("Incorrect build series: too many results");
+      }
+      for (int end = i + run; i < end; i++) {
+        series.add(numbers[i], durations[i], successful);
+      }
+      successful = !successful;
+    }
+    return series;
+  }
+
+  private static int zigzag(int value) {
+    return (value << 1) ^ (value >> 31);
+  }
+
+  private static int unzigzag(int value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private static void writeVarint(ByteArrayOutputStream out, int value) {
+    while ((value & ~0x7F) != 0) {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  private static final class Reader {
+    private final byte[] bytes;
+    private int position;
+
+    Reader(byte[] bytes) {
+      this.bytes = bytes;
+    }
+
+    int remaining() {
+      return bytes.length - position;
+    }
+
+    int readVarint() {
+      int value = 0;
+      for (int shift = 0; shift < 32; shift += 7) {
+        if (position == bytes.length) {
+          throw new IllegalArgumentException("Incorrect build series: unexpected end");
+        }
+        int b = bytes[position++];
+        value |= (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw new IllegalArgumentException("Incorrect build series: malformed number");
+    }
+  }
+
+  static String toBase64(byte[] bytes) {
+    StringBuilder sb = new StringBuilder((bytes.length * 4 + 2) / 3);
+    for (int i = 0; i < bytes.length; i += 3) {
+      int remaining = Math.min(3, bytes.length - i);
+      int chunk = (bytes[i] & 0xFF) << 16;
+      if (remaining > 1) {
+        chunk |= (bytes[i + 1] & 0xFF) << 8;
+      }
+      if (remaining > 2) {
+        chunk |= bytes[i + 2] & 0xFF;
+      }
+      for (int j = 0; j <= remaining; j++) {
+        sb.append(ALPHABET[(chunk >> (18 - 6 * j)) & 0x3F]);
+      }
+    }
+    return sb.toString();
+  }
+
+  static byte[] fromBase64(String text) {
+    String trimmed = text == null ? "" : text.trim();
+    if (trimmed.length() % 4 == 1) {
+      throw new IllegalArgumentException("Incorrect build series: truncated");
+    }
+    byte[] bytes = new byte[trimmed.length() * 3 / 4];
+    int position = 0;
+    for (int i = 0; i < trimmed.length(); i += 4) {
+      int remaining = Math.min(4, trimmed.length() - i);
+      int chunk = 0;
+      for (int j = 0; j < 4; j++) {
+        chunk <<= 6;
+        if (j < remaining) {
+          chunk |= sextet(trimmed.charAt(i + j));
+        }
+      }
+      for (int j = 0; j < remaining - 1; j++) {
+        bytes[position++] = (byte) (chunk >> (16 - 8 * j));
+      }
+    }
+    return bytes;
+  }
+
+  private static int sextet(char c) {
+    int value = c < INDEX.length ? INDEX[c] : -1;
+    if (value < 0) {
+      throw new IllegalArgumentException("Incorrect build series: unexpected character '" + c + "'");
+    }
+    return value;
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of build durations in milliseconds with logarithmic buckets, like HdrHistogram:
+ * durations below 64 ms are counted exactly, longer ones with relative error of at most 1/32.
+ * Memory is bounded regardless of number of recorded durations, and histograms can be merged,
+ * so percentiles can be calculated for several jobs or periods without keeping durations.
+ */
+public class DurationHistogram {
+  /**
+   * Each power of two is divided into 2^SUB_BUCKET_BITS buckets.
+   */
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = bucketIndex(Integer.MAX_VALUE) + 1;
+
+  private static final String MIN_FIELD = "min";
+  private static final String MAX_FIELD = "max";
+  private static final String BUCKETS_FIELD = "b";
+
+  private final long[] counts = new long[BUCKETS];
+  private long count;
+  private int min = Integer.MAX_VALUE;
+  private int max = Integer.MIN_VALUE;
+
+  /**
+   * @param duration in milliseconds, negative durations are counted as zero
+   */
+  public DurationHistogram record(long duration) {
+    int value = (int) Math.max(0, Math.min(Integer.MAX_VALUE, duration));
+    counts[bucketIndex(value)]++;
+    count++;
+    min = Math.min(min, value);
+    max = Math.max(max, value);
+    return this;
+  }
+
+  public DurationHistogram merge(DurationHistogram other) {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] += other.counts[i];
+    }
+    count += other.count;
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+    return this;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public boolean isEmpty() {
+    return count == 0;
+  }
+
+  /**
+   * @return shortest recorded duration or 0, if nothing recorded
+   */
+  public int getMin() {
+    return isEmpty() ? 0 : min;
+  }
+
+  /**
+   * @return longest recorded duration or 0, if nothing recorded
+   */
+  public int getMax() {
+    return isEmpty() ? 0 : max;
+  }
+
+  /**
+   * @param percentile from 0 to 100
+   * @return duration, which isn't exceeded by given percentage of recorded durations, or 0, if nothing recorded
+   */
+  public int getValueAtPercentile(double percentile) {
+    if (isEmpty()) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * count));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        long middle = (lowestValue(i) + highestValue(i)) / 2;
+        return (int) Math.max(min, Math.min(max, middle));
+      }
+    }
+    return max;
+  }
+
+  static int bucketIndex(int value) {
+    if (value < 2 * SUB_BUCKETS) {
+      return value;
+    }
+    int shift = 31 - Integer.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return shift * SUB_BUCKETS + (value >>> shift);
+  }
+
+  static long lowestValue(int index) {
+    if (index < 2 * SUB_BUCKETS) {
+      return index;
+    }
+    int shift = index / SUB_BUCKETS - 1;
+    return (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+  }
+
+  static long highestValue(int index) {
+    if (index < 2 * SUB_BUCKETS) {
+      return index;
+    }
+    int shift = index / SUB_BUCKETS - 1;
+    return ((long) (index % SUB_BUCKETS + SUB_BUCKETS + 1) << shift) - 1;
+  }
+
+  /**
+   * Format is similar to {@link Build#convertToString()}, only non-empty buckets are stored,
+   * e.g. "min=3;max=130;b=3:1,5:2,96:1;".
+   */
+  public String convertToString() {
+    StringBuilder sb = new StringBuilder();
+    if (isEmpty()) {
+      return sb.toString();
+    }
+    sb.append(MIN_FIELD).append('=').append(min).append(';');
+    sb.append(MAX_FIELD).append('=').append(max).append(';');
+    sb.append(BUCKETS_FIELD).append('=');
+    String separator = "";
+    for (int i = 0; i < BUCKETS; i++) {
+      if (counts[i] != 0) {
+        sb.append(separator).append(i).append(':').append(counts[i]);
+        separator = ",";
+      }
+    }
+    return sb.append(';').toString();
+  }
+
+  public static DurationHistogram fromString(String data) {
+    DurationHistogram histogram = new DurationHistogram();
+    for (String field : StringUtils.split(StringUtils.defaultString(data), ';')) {
+      String key = StringUtils.substringBefore(field, "=");
+      String value = StringUtils.substringAfter(field, "=");
+      if (MIN_FIELD.equals(key)) {
+        histogram.min = Integer.parseInt(value);
+      } else if (MAX_FIELD.equals(key)) {
+        histogram.max = Integer.parseInt(value);
+      } else if (BUCKETS_FIELD.equals(key)) {
+        for (String bucket : StringUtils.split(value, ',')) {
+          int index = Integer.parseInt(StringUtils.substringBefore(bucket, ":"));
+          long bucketCount = Long.parseLong(StringUtils.substringAfter(bucket, ":"));
+          if (index < 0 || index >= BUCKETS || bucketCount < 0) {
+            throw new IllegalArgumentException("Incorrect bucket: " + bucket);
+          }
+          histogram.counts[index] += bucketCount;
+          histogram.count += bucketCount;
+        }
+      }
+    }
+    return histogram;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof DurationHistogram)) {
+      return false;
+    }
+    DurationHistogram other = (DurationHistogram) obj;
+    return count == other.count && getMin() == other.getMin() && getMax() == other.getMax() && Arrays.equals(counts, other.counts);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(counts);
+  }
+}
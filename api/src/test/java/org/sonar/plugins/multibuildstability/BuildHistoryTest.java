@@ -0,0 +1,61 @@
+package org.sonar.plugins.multibuildstability;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class BuildHistoryTest {
+  @Test
+  public void sortedByNumber() {
+    BuildHistory history = BuildHistory.of(Arrays.asList(
+        new Build(3, 3000, "SUCCESS", true, 30),
+        new Build(1, 1000, "FAILURE", false, 10),
+        new Build(2, 2000, "SUCCESS", true, 20.4)
+    ));
+
+    assertThat(history.size(), is(3));
+    assertThat(history.getNumber(0), is(1));
+    assertThat(history.getTimestamp(0), is(1000L));
+    assertThat(history.isSuccessful(0), is(false));
+    assertThat(history.getNumber(1), is(2));
+    assertThat(history.getDuration(1), is(20));
+    assertThat(history.isSuccessful(1), is(true));
+    assertThat(history.getNumber(2), is(3));
+  }
+
+  @Test
+  public void lastAddedBuildWins() {
+    BuildHistory history = new BuildHistory.Builder()
+        .add(2, 2000, 20, false)
+        .add(1, 1000, 10, true)
+        .add(2, 2500, 25, true)
+        .build();
+
+    assertThat(history.size(), is(2));
+    assertThat(history.getNumber(1), is(2));
+    assertThat(history.getTimestamp(1), is(2500L));
+    assertThat(history.isSuccessful(1), is(true));
+  }
+
+  @Test
+  public void growsBeyondExpectedSize() {
+    BuildHistory.Builder builder = new BuildHistory.Builder(1);
+    for (int number = 100; number > 0; number--) {
+      builder.add(number, number * 1000L, number, number % 2 == 0);
+    }
+    BuildHistory history = builder.build();
+
+    assertThat(history.size(), is(100));
+    assertThat(history.getNumber(99), is(100));
+    assertThat(history.isSuccessful(99), is(true));
+    assertThat(history.isEmpty(), is(false));
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void indexOutOfBounds() {
+    new BuildHistory.Builder().build().getNumber(0);
+  }
+}
@@ -0,0 +1,70 @@
+package org.sonar.plugins.multibuildstability;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class BuildSeriesCodecTest {
+  @Test
+  public void roundTrip() {
+    BuildSeries series = new BuildSeries()
+        .add(11, 5000, false)
+        .add(12, 10049, true)
+        .add(13, 10050, true)
+        .add(15, 20000, false)
+        .add(14, 0, true);
+
+    BuildSeries decoded = BuildSeriesCodec.decode(BuildSeriesCodec.encode(series));
+
+    assertThat(decoded.size(), is(5));
+    assertThat(decoded.getNumber(0), is(11));
+    assertThat(decoded.getNumber(3), is(15));
+    assertThat(decoded.getNumber(4), is(14));
+    assertThat(decoded.getDuration(1), is(10000));
+    assertThat(decoded.getDuration(2), is(10100));
+    assertThat(decoded.isSuccessful(0), is(false));
+    assertThat(decoded.isSuccessful(2), is(true));
+    assertThat(decoded.isSuccessful(3), is(false));
+    assertThat(decoded.isSuccessful(4), is(true));
+  }
+
+  @Test
+  public void emptySeries() {
+    assertThat(BuildSeriesCodec.decode(BuildSeriesCodec.encode(new BuildSeries())).isEmpty(), is(true));
+  }
+
+  @Test
+  public void muchShorterThanText() {
+    BuildSeries series = new BuildSeries();
+    StringBuilder text = new StringBuilder();
+    for (int i = 1000; i < 2000; i++) {
+      boolean successful = i % 10 != 0;
+      series.add(i, 600000 + i, successful);
+      text.append(i).append('=').append(600.0 + i / 1000.0).append(';');
+      text.append(i).append('=').append(successful ? 'g' : 'r').append(';');
+    }
+
+    String encoded = BuildSeriesCodec.encode(series);
+
+    assertTrue(encoded.matches("[A-Za-z0-9_-]+"));
+    assertTrue(encoded.length() + " characters", encoded.length() * 4 < text.length());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void incorrectText() {
+    BuildSeriesCodec.decode("not a series");
+  }
+
+  @Test
+  public void base64() {
+    byte[] bytes = {0, -1, 62, 63, 127, -128, 1};
+    for (int length = 0; length <= bytes.length; length++) {
+      byte[] prefix = Arrays.copyOf(bytes, length);
+      assertThat(BuildSeriesCodec.fromBase64(BuildSeriesCodec.toBase64(prefix)), is(prefix));
+    }
+  }
+}
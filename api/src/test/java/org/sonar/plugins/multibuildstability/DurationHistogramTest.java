@@ -0,0 +1,60 @@
+package org.sonar.plugins.multibuildstability;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class DurationHistogramTest {
+  @Test
+  public void shortDurationsAreExact() {
+    DurationHistogram histogram = new DurationHistogram().record(10).record(3).record(5);
+
+    assertThat(histogram.getCount(), is(3L));
+    assertThat(histogram.getValueAtPercentile(50), is(5));
+    assertThat(histogram.getValueAtPercentile(90), is(10));
+    assertThat(histogram.getValueAtPercentile(0), is(3));
+  }
+
+  @Test
+  public void longDurationsAreApproximate() {
+    DurationHistogram histogram = new DurationHistogram();
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(i * 1000L);
+    }
+
+    assertWithin(histogram.getValueAtPercentile(50), 500000);
+    assertWithin(histogram.getValueAtPercentile(90), 900000);
+    assertWithin(histogram.getValueAtPercentile(99), 990000);
+    assertThat(histogram.getValueAtPercentile(100), is(1000000));
+  }
+
+  @Test
+  public void merge() {
+    DurationHistogram first = new DurationHistogram().record(1).record(2);
+    DurationHistogram second = new DurationHistogram().record(100).record(200);
+
+    first.merge(second);
+
+    assertThat(first.getCount(), is(4L));
+    assertThat(first.getMin(), is(1));
+    assertThat(first.getMax(), is(200));
+    assertThat(first.getValueAtPercentile(50), is(2));
+  }
+
+  @Test
+  public void convertToString() {
+    DurationHistogram histogram = new DurationHistogram().record(3).record(5).record(5).record(130);
+
+    String data = histogram.convertToString();
+
+    assertThat(data, is("min=3;max=130;b=3:1,5:2,96:1;"));
+    assertThat(DurationHistogram.fromString(data), is(histogram));
+    assertThat(DurationHistogram.fromString("").isEmpty(), is(true));
+  }
+
+  private static void assertWithin(int actual, int expected) {
+    assertTrue(actual + " instead of " + expected, Math.abs(actual - expected) <= expected / 32);
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonar.api.batch.SensorContext;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calculation of measures for one job by {@link BuildStabilitySensor#analyseBuilds(BuildHistory, JobStatistics, String, long[], BuildStatistics[])},
+ * with and without conversion from list of {@link Build}s.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class AnalyseBuildsBenchmark {
+  @Param({"1000", "10000", "100000", "1000000"})
+  public int builds;
+
+  private List<Build> history;
+  private BuildHistory columns;
+  private BuildStabilitySensor sensor;
+  private SensorContext context;
+
+  @Setup
+  public void setUp() {
+    history = BenchmarkData.builds(builds);
+    columns = BuildHistory.of(history);
+    sensor = new BuildStabilitySensor();
+    context = nullContext();
+  }
+
+  @Benchmark
+  public void analyseBuilds() {
+    // sensor sorts given list, so each invocation gets builds newest first, like retrieved from server
+    sensor.analyseBuilds(new ArrayList<Build>(history), context, "job");
+  }
+
+  @Benchmark
+  public void analyseBuildHistory() {
+    // fresh statistics, so all builds are folded like in first analysis
+    JobMeasures job = sensor.analyseBuilds(columns, new JobStatistics(), "job", new long[]{Long.MIN_VALUE}, new BuildStatistics[]{new BuildStatistics()});
+    sensor.saveMeasures(context, new BuildStatistics[]{new BuildStatistics()}, Collections.singletonList(job));
+  }
+
+  /**
+   * Context, which ignores all measures, so only calculation is measured.
+   */
+  private static SensorContext nullContext() {
+    return (SensorContext) Proxy.newProxyInstance(SensorContext.class.getClassLoader(), new Class[]{SensorContext.class},
+        new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            return method.getReturnType() == boolean.class ? Boolean.FALSE : null;
+          }
+        });
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Reproducible build histories for benchmarks.
+ */
+public final class BenchmarkData {
+  /**
+   * Timestamp of first generated build, 2011-01-01.
+   */
+  public static final long START = 1293840000000L;
+
+  private BenchmarkData() {
+  }
+
+  /**
+   * Returns builds newest first, like they are retrieved from CI server.
+   * Builds are 10 minutes apart, about one of five fails, failures come in streaks.
+   */
+  public static List<Build> builds(int count) {
+    Random random = new Random(count);
+    List<Build> builds = new ArrayList<Build>(count);
+    boolean successful = true;
+    for (int number = count; number >= 1; number--) {
+      if (random.nextInt(10) == 0) {
+        successful = !successful;
+      }
+      if (!successful && random.nextInt(4) == 0) {
+        successful = true;
+      }
+      long timestamp = START + number * 10L * 60 * 1000;
+      double duration = 60000 + random.nextInt(10 * 60 * 1000);
+      builds.add(new Build(number, timestamp, successful ? "SUCCESS" : "FAILURE", successful, duration));
+    }
+    return builds;
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Build#convertToString()} and {@link Build#fromString(String)} over whole history of a job,
+ * and {@link BuildSeriesCodec} over the same builds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class BuildFormatBenchmark {
+  @Param({"1000", "10000", "100000", "1000000"})
+  public int builds;
+
+  private List<Build> history;
+  private String[] formatted;
+  private BuildSeries series;
+  private String encoded;
+
+  @Setup
+  public void setUp() {
+    history = BenchmarkData.builds(builds);
+    formatted = new String[history.size()];
+    for (int i = 0; i < formatted.length; i++) {
+      formatted[i] = history.get(i).convertToString();
+    }
+    BuildHistory columns = BuildHistory.of(history);
+    series = new BuildSeries(columns.size());
+    for (int i = 0; i < columns.size(); i++) {
+      series.add(columns.getNumber(i), columns.getDuration(i), columns.isSuccessful(i));
+    }
+    encoded = BuildSeriesCodec.encode(series);
+  }
+
+  @Benchmark
+  public void convertToString(Blackhole blackhole) {
+    for (Build build : history) {
+      blackhole.consume(build.convertToString());
+    }
+  }
+
+  @Benchmark
+  public void fromString(Blackhole blackhole) {
+    for (String string : formatted) {
+      blackhole.consume(Build.fromString(string));
+    }
+  }
+
+  @Benchmark
+  public String encodeSeries() {
+    return BuildSeriesCodec.encode(series);
+  }
+
+  @Benchmark
+  public BuildSeries decodeSeries() {
+    return BuildSeriesCodec.decode(encoded);
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonar.api.charts.ChartParameters;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering of widget chart by {@link BuildStabilityChart}, as done for each page view, which isn't in cache of images.
+ * Widget passes snapshot and job, so chart reads series of job from measure, decodes it, reduces it to one bar
+ * per pixel and renders it. Parts are measured separately, except reading of measure from database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-Djava.awt.headless=true"})
+public class ChartBenchmark {
+  private static final int WIDTH = 350;
+
+  @Param({"1000", "10000", "100000"})
+  public int builds;
+
+  private BuildStabilityChart chart;
+  private String measure;
+  private BuildSeries series;
+  private String query;
+
+  @Setup
+  public void setUp() {
+    chart = new BuildStabilityChart(null, null, null);
+    List<Build> history = BenchmarkData.builds(builds);
+    BuildSeries encoded = new BuildSeries(history.size());
+    for (Build build : history) {
+      encoded.add(build.getNumber(), (int) build.getDuration(), build.isSuccessful());
+    }
+    String text = BuildSeriesCodec.encode(encoded);
+    measure = new JobMeasures("job").put(JobMeasures.SERIES_KEY, text).convertToString();
+    series = BuildSeriesCodec.decode(text);
+    // same series as widget passes by snapshot, but without database
+    query = "w=" + WIDTH + "&h=200&s=" + text;
+  }
+
+  /**
+   * Series of one job from line of measure, as in {@link BuildStabilityChart#loadSeries(int, String, int)}.
+   */
+  @Benchmark
+  public BuildSeries decode() {
+    return BuildSeriesCodec.decode(JobMeasures.fromString(measure).get(JobMeasures.SERIES_KEY));
+  }
+
+  @Benchmark
+  public BuildSeries downsample() {
+    return BuildSeriesDownsampler.downsample(series, WIDTH);
+  }
+
+  /**
+   * Decoding, downsampling and rendering, chart has no cache of images.
+   */
+  @Benchmark
+  public BufferedImage generateImage() {
+    return chart.generateImage(new ChartParameters(query));
+  }
+}
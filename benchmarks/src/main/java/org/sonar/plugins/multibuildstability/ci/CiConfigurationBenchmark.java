@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability.ci;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of {@link org.sonar.plugins.multibuildstability.BuildStabilitySensor#CI_URL_PROPERTY} with given number of jobs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CiConfigurationBenchmark {
+  @Param({"1", "10", "100", "1000"})
+  public int jobs;
+
+  private String input;
+
+  @Setup
+  public void setUp() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < jobs; i++) {
+      if (i % 2 == 0) {
+        sb.append("[Job \\| ").append(i).append("]Hudson:http://ci.example.org:8080/job/job-").append(i);
+      } else {
+        sb.append("Bamboo:https://bamboo.example.org/browse/PLAN-JOB").append(i);
+      }
+      sb.append(i % 3 == 0 ? "\n" : "|");
+    }
+    input = sb.toString();
+  }
+
+  @Benchmark
+  public List<CiConfiguration> parseAllFrom() {
+    return CiConfiguration.parseAllFrom(input);
+  }
+}
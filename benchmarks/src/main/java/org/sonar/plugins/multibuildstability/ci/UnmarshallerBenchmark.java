@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability.ci;
+
+import org.dom4j.DocumentException;
+import org.dom4j.Element;
+import org.dom4j.io.SAXReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.sonar.plugins.multibuildstability.Build;
+import org.sonar.plugins.multibuildstability.ci.bamboo.BambooBuildUnmarshaller;
+import org.sonar.plugins.multibuildstability.ci.hudson.HudsonBuildUnmarshaller;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Conversion of Hudson and Bamboo responses with given number of builds into {@link Build}s:
+ * from already parsed DOM by {@link Unmarshaller#toModel(Element)} and while parsing by
+ * {@link StreamingUnmarshaller#toModels(XMLStreamReader, String)}, as done by {@link CiConnector}.
+ * Sizes stop at 100000 builds, which is already a thousand of pages in bulk mode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class UnmarshallerBenchmark {
+  private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+  @Param({"hudson", "bamboo"})
+  public String system;
+
+  @Param({"1000", "10000", "100000"})
+  public int builds;
+
+  private AbstractUnmarshaller unmarshaller;
+  private String element;
+  private byte[] response;
+  private List<?> elements;
+
+  @Setup
+  public void setUp() throws UnsupportedEncodingException, DocumentException {
+    StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+    if ("hudson".equals(system)) {
+      unmarshaller = new HudsonBuildUnmarshaller();
+      element = "allBuild";
+      sb.append("<freeStyleProject>");
+      for (int number = builds; number >= 1; number--) {
+        sb.append("<allBuild><building>false</building><duration>").append(60000 + number % 600000)
+            .append("</duration><number>").append(number)
+            .append("</number><result>").append(number % 5 == 0 ? "FAILURE" : "SUCCESS")
+            .append("</result><timestamp>").append(1293840000000L + number * 600000L)
+            .append("</timestamp></allBuild>");
+      }
+      sb.append("</freeStyleProject>");
+    } else {
+      unmarshaller = new BambooBuildUnmarshaller();
+      element = "result";
+      SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+      sb.append("<results><results size=\"").append(builds).append("\">");
+      for (int number = builds; number >= 1; number--) {
+        sb.append("<result key=\"PLAN-JOB-").append(number).append("\" state=\"")
+            .append(number % 5 == 0 ? "Failed" : "Successful")
+            .append("\" lifeCycleState=\"Finished\" number=\"").append(number)
+            .append("\"><buildStartedTime>").append(format.format(new Date(1293840000000L + number * 600000L)))
+            .append("</buildStartedTime><buildDurationInSeconds>").append(60 + number % 600)
+            .append("</buildDurationInSeconds><buildReason>Manual build</buildReason></result>");
+      }
+      sb.append("</results></results>");
+    }
+    response = sb.toString().getBytes("UTF-8");
+    Element root = new SAXReader().read(new ByteArrayInputStream(response)).getRootElement();
+    elements = "hudson".equals(system) ? root.elements(element) : root.element("results").elements(element);
+  }
+
+  @Benchmark
+  public void toModel(Blackhole blackhole) {
+    for (Object child : elements) {
+      blackhole.consume(unmarshaller.toModel((Element) child));
+    }
+  }
+
+  @Benchmark
+  public List<Build> toModels() throws XMLStreamException {
+    XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(new ByteArrayInputStream(response));
+    try {
+      return unmarshaller.toModels(reader, element);
+    } finally {
+      reader.close();
+    }
+  }
+}
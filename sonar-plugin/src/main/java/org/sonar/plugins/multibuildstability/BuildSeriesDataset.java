@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability;
+
+import org.jfree.data.UnknownKeyException;
+import org.jfree.data.category.CategoryDataset;
+import org.jfree.data.general.AbstractDataset;
+
+import java.awt.*;
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Durations of builds in seconds for {@link BuildStabilityChart}, one row and a column per build,
+ * keyed by build number. Unlike {@link org.jfree.data.category.DefaultCategoryDataset} values are kept
+ * in arrays of primitives together with color of each bar.
+ */
+public class BuildSeriesDataset extends AbstractDataset implements CategoryDataset {
+  private static final Integer ROW_KEY = 0;
+
+  private static final byte UNKNOWN = 0;
+  private static final byte SUCCESSFUL = 1;
+  private static final byte FAILED = 2;
+
+  private final int[] numbers;
+  private final double[] durations;
+  private final byte[] results;
+
+  private final List<Comparable> columnKeys = new AbstractList<Comparable>() {
+    @Override
+    public Comparable get(int index) {
+      return getColumnKey(index);
+    }
+
+    @Override
+    public int size() {
+      return numbers.length;
+    }
+  };
+
+  /**
+   * Empty series is shown as one gray bar of zero height.
+   */
+  public BuildSeriesDataset(BuildSeries series) {
+    int size = Math.max(1, series.size());
+    numbers = new int[size];
+    durations = new double[size];
+    results = new byte[size];
+    for (int i = 0; i < series.size(); i++) {
+      numbers[i] = series.getNumber(i);
+      durations[i] = series.getDuration(i) / 1000.0;
+      results[i] = series.isSuccessful(i) ? SUCCESSFUL : FAILED;
+    }
+  }
+
+  /**
+   * @return color of bar in given column
+   */
+  public Paint getPaint(int column) {
+    switch (results[column]) {
+      case SUCCESSFUL:
+        return Color.GREEN;
+      case FAILED:
+        return Color.RED;
+      default:
+        return Color.GRAY;
+    }
+  }
+
+  public int getRowCount() {
+    return 1;
+  }
+
+  public int getColumnCount() {
+    return numbers.length;
+  }
+
+  public Number getValue(int row, int column) {
+    if (row != 0) {
+      throw new IndexOutOfBoundsException("Row: " + row);
+    }
+    return durations[column];
+  }
+
+  public Comparable getRowKey(int row) {
+    if (row != 0) {
+      throw new IndexOutOfBoundsException("Row: " + row);
+    }
+    return ROW_KEY;
+  }
+
+  public int getRowIndex(Comparable key) {
+    return ROW_KEY.equals(key) ? 0 : -1;
+  }
+
+  public List getRowKeys() {
+    return Collections.singletonList(ROW_KEY);
+  }
+
+  public Comparable getColumnKey(int column) {
+    return numbers[column];
+  }
+
+  /**
+   * Linear search, JFreeChart renders by indexes and doesn't use it.
+   */
+  public int getColumnIndex(Comparable key) {
+    if (key instanceof Integer) {
+      int number = (Integer) key;
+      for (int i = 0; i < numbers.length; i++) {
+        if (numbers[i] == number) {
+          return i;
+        }
+      }
+    }
+    return -1;
+  }
+
+  public List getColumnKeys() {
+    return columnKeys;
+  }
+
+  public Number getValue(Comparable rowKey, Comparable columnKey) {
+    int row = getRowIndex(rowKey);
+    int column = getColumnIndex(columnKey);
+    if (row < 0 || column < 0) {
+      throw new UnknownKeyException("Unknown key: " + rowKey + ", " + columnKey);
+    }
+    return getValue(row, column);
+  }
+}
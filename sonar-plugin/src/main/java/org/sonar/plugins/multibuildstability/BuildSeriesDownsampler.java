@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability;
+
+/**
+ * Reduces number of builds on chart with Largest-Triangle-Three-Buckets algorithm:
+ * first and last builds are kept, others are divided into buckets and from each bucket
+ * the build forming the largest triangle with builds selected for neighbour buckets is kept,
+ * so peaks of durations remain visible. Selected build is shown as failed, if any build of its bucket failed.
+ */
+public final class BuildSeriesDownsampler {
+  private BuildSeriesDownsampler() {
+  }
+
+  /**
+   * @param threshold maximum number of builds in result, values below 3 are treated as 3
+   * @return given series, if it's small enough, otherwise new series
+   */
+  public static BuildSeries downsample(BuildSeries series, int threshold) {
+    int size = series.size();
+    int buckets = Math.max(3, threshold);
+    if (size <= buckets) {
+      return series;
+    }
+    BuildSeries result = new BuildSeries(buckets);
+    result.add(series.getNumber(0), series.getDuration(0), series.isSuccessful(0));
+
+    // builds between first and last are divided into buckets - 2 buckets
+    double bucketSize = (double) (size - 2) / (buckets - 2);
+    int selected = 0;
+    for (int bucket = 0; bucket < buckets - 2; bucket++) {
+      int start = bucketStart(bucket, buckets, bucketSize, size);
+      int end = bucketStart(bucket + 1, buckets, bucketSize, size);
+
+      // average of next bucket, last build forms its own bucket
+      int nextStart = end;
+      int nextEnd = bucketStart(bucket + 2, buckets, bucketSize, size);
+      double averageX = 0;
+      double averageY = 0;
+      for (int i = nextStart; i < nextEnd; i++) {
+        averageX += i;
+        averageY += series.getDuration(i);
+      }
+      averageX /= nextEnd - nextStart;
+      averageY /= nextEnd - nextStart;
+
+      double selectedX = selected;
+      double selectedY = series.getDuration(selected);
+      double maxArea = -1;
+      int next = start;
+      boolean successful = true;
+      for (int i = start; i < end; i++) {
+        // doubled area of triangle
+        double area = Math.abs((selectedX - averageX) * (series.getDuration(i) - selectedY) - (selectedX - i) * (averageY - selectedY));
+        if (area > maxArea) {
+          maxArea = area;
+          next = i;
+        }
+        successful &= series.isSuccessful(i);
+      }
+      selected = next;
+      result.add(series.getNumber(selected), series.getDuration(selected), successful);
+    }
+
+    result.add(series.getNumber(size - 1), series.getDuration(size - 1), series.isSuccessful(size - 1));
+    return result;
+  }
+
+  /**
+   * @return index of first build in given bucket, buckets - 2 is bucket of last build
+   */
+  private static int bucketStart(int bucket, int buckets, double bucketSize, int size) {
+    if (bucket >= buckets - 2) {
+      return size - 1 + (bucket - (buckets - 2));
+    }
+    return 1 + (int) (bucket * bucketSize);
+  }
+}
@@ -17,18 +17,29 @@
 package org.sonar.plugins.multibuildstability;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
 import org.jfree.chart.axis.CategoryAxis;
 import org.jfree.chart.axis.NumberAxis;
 import org.jfree.chart.plot.CategoryPlot;
 import org.jfree.chart.plot.Plot;
 import org.jfree.chart.renderer.category.BarRenderer;
-import org.jfree.data.category.DefaultCategoryDataset;
+import org.jfree.data.category.CategoryDataset;
 import org.sonar.api.charts.AbstractChart;
 import org.sonar.api.charts.ChartParameters;
+import org.sonar.api.database.DatabaseSession;
+import org.sonar.api.database.model.MeasureModel;
+import org.sonar.api.database.model.ResourceModel;
+import org.sonar.api.database.model.Snapshot;
+import org.sonar.api.measures.Metric;
+import org.sonar.api.measures.MetricFinder;
+import org.sonar.api.utils.SonarException;
 
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.DecimalFormat;
-import java.util.ArrayList;
 
 /**
  * @author Evgeny Mandrikov
@@ -37,13 +48,95 @@ public class BuildStabilityChart extends AbstractChart {
   private static final String FONT_NAME = "SansSerif";
   private static final String PARAM_VALUES = "v";
   private static final String PARAM_COLORS = "c";
+  /**
+   * Builds in form of {@link BuildSeriesCodec}, used instead of values and colors.
+   */
+  private static final String PARAM_SERIES = "s";
+  /**
+   * Snapshot and index of job, which series is loaded from {@link BuildStabilityMetrics#JOBS} measure.
+   */
+  private static final String PARAM_SNAPSHOT = "sid";
+  private static final String PARAM_JOB = "job";
+  /**
+   * Key of resource, which is shown by widget, snapshot must belong to it.
+   */
+  private static final String PARAM_RESOURCE = "rk";
 //  private static final String PARAM_DAYS = "d";
   private static final String PARAM_FONT_SIZE = "fs";
 
+  private final DatabaseSession session;
+  private final MetricFinder metricFinder;
+  private final ChartCache cache;
+
+  public BuildStabilityChart(DatabaseSession session, MetricFinder metricFinder) {
+    this(session, metricFinder, new ChartCache());
+  }
+
+  /**
+   * Chart, which can only show values given in parameters.
+   */
+  public BuildStabilityChart() {
+    this(null, null);
+  }
+
+  /**
+   * @param cache rendered images or null to render each request
+   */
+  BuildStabilityChart(DatabaseSession session, MetricFinder metricFinder, ChartCache cache) {
+    this.session = session;
+    this.metricFinder = metricFinder;
+    this.cache = cache;
+  }
+
   public String getKey() {
     return "buildsbar";
   }
 
+  /**
+   * Data of chart changes only with new analysis, which has new snapshot, so same parameters always give same image.
+   */
+  @Override
+  public BufferedImage generateImage(ChartParameters params) {
+    if (cache == null) {
+      return super.generateImage(params);
+    }
+    String key = getCacheKey(params);
+    BufferedImage image = cache.get(key);
+    if (image == null) {
+      image = super.generateImage(params);
+      cache.put(key, image);
+    }
+    return image;
+  }
+
+  /**
+   * Size and snapshot are kept as is, potentially long data is replaced by its digest.
+   */
+  static String getCacheKey(ChartParameters params) {
+    StringBuilder key = new StringBuilder()
+        .append(params.getWidth()).append('x').append(params.getHeight())
+        .append(';').append(params.getValue(PARAM_FONT_SIZE, "", false))
+        .append(';').append(params.getValue(PARAM_SNAPSHOT, "", false))
+        .append(';').append(params.getValue(PARAM_RESOURCE, "", true))
+        .append(';').append(params.getValue(PARAM_JOB, "", false))
+        .append(';');
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      for (String param : new String[]{PARAM_SERIES, PARAM_VALUES, PARAM_COLORS}) {
+        digest.update(params.getValue(param, "", false).getBytes("UTF-8"));
+        digest.update((byte) 0);
+      }
+      for (byte b : digest.digest()) {
+        key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+    } catch (NoSuchAlgorithmException e) {
+      throw new SonarException(e);
+    } catch (UnsupportedEncodingException e) {
+      throw new SonarException(e);
+    }
+    return key.toString();
+  }
+
   @Override
   protected Plot getPlot(ChartParameters params) {
     CategoryPlot plot = generateJFreeChart(params);
@@ -53,23 +146,20 @@ public class BuildStabilityChart extends AbstractChart {
     return plot;
   }
 
+  /**
+   * Takes color of each bar from {@link BuildSeriesDataset}.
+   */
   class ColoredBarRenderer extends BarRenderer {
-    private Paint[] colors;
-
-    public void setColors(Paint[] colors) {
-      this.colors = colors;
-    }
-
     public Paint getItemPaint(final int row, final int column) {
-      if (colors.length == 0) {
-        return Color.GRAY;
+      CategoryDataset dataset = getPlot().getDataset();
+      if (dataset instanceof BuildSeriesDataset) {
+        return ((BuildSeriesDataset) dataset).getPaint(column);
       }
-      return colors[column % colors.length];
+      return Color.GRAY;
     }
   }
 
   private CategoryPlot generateJFreeChart(ChartParameters params) {
-    DefaultCategoryDataset dataset = new DefaultCategoryDataset();
     CategoryPlot plot = new CategoryPlot();
 
     Font font = getFont(params.getValue(PARAM_FONT_SIZE));
@@ -77,38 +167,67 @@ public class BuildStabilityChart extends AbstractChart {
 //    configureDomainAxis(plot, params.getValue(PARAM_DAYS));
     configureDomainAxis(plot, "");
     configureRangeAxis(plot, "s", font);
-    configureRenderer(plot, params.getValue(PARAM_COLORS, "", true));
-    configureValues(dataset, params.getValue(PARAM_VALUES, "", true));
-
-    plot.setDataset(dataset);
+    String snapshot = params.getValue(PARAM_SNAPSHOT, "", false);
+    String encoded = params.getValue(PARAM_SERIES, "", false);
+    BuildSeries series;
+    if (StringUtils.isNotBlank(snapshot)) {
+      int job = Integer.parseInt(params.getValue(PARAM_JOB, "0", false));
+      series = loadSeries(Integer.parseInt(snapshot), params.getValue(PARAM_RESOURCE, "", true), job);
+    } else if (StringUtils.isNotBlank(encoded)) {
+      series = BuildSeriesCodec.decode(encoded);
+    } else {
+      series = parseSeries(params.getValue(PARAM_VALUES, "", true), params.getValue(PARAM_COLORS, "", true));
+    }
+    // at most one bar per pixel, so rendering doesn't depend on number of builds
+    configureRenderer(plot);
+    plot.setDataset(new BuildSeriesDataset(BuildSeriesDownsampler.downsample(series, params.getWidth())));
 
     return plot;
   }
 
-  private void configureValues(DefaultCategoryDataset dataset, String values) {
-    String[] pairs = StringUtils.split(values, ";");
-    if (pairs.length == 0) {
-      dataset.addValue((Number) 0.0, 0, "0");
-    } else {
-      for (String pair : pairs) {
-        String[] keyValue = StringUtils.split(pair, "=");
-        double val = Double.parseDouble(keyValue[1]);
-        dataset.addValue((Number) val, 0, keyValue[0]);
-      }
+  /**
+   * Parses values and colors in form of "number=value;", colors are assigned to values in order.
+   */
+  private static BuildSeries parseSeries(String values, String colors) {
+    String[] valuePairs = StringUtils.split(values, ";");
+    String[] colorPairs = StringUtils.split(colors, ";");
+    BuildSeries series = new BuildSeries(valuePairs.length);
+    for (int i = 0; i < valuePairs.length; i++) {
+      String[] keyValue = StringUtils.split(valuePairs[i], "=");
+      int duration = (int) Math.round(Double.parseDouble(keyValue[1]) * 1000);
+      boolean successful = colorPairs.length == 0 || !"r".equals(StringUtils.substringAfter(colorPairs[i % colorPairs.length], "="));
+      series.add(NumberUtils.toInt(keyValue[0], i), duration, successful);
     }
+    return series;
   }
 
-  private void configureRenderer(CategoryPlot plot, String colors) {
-    ColoredBarRenderer renderer = new ColoredBarRenderer();
-
-    String[] pairs = StringUtils.split(colors, ";");
-    ArrayList<Paint> paints = new ArrayList<Paint>();
-    for (String pair : pairs) {
-      String[] keyValue = StringUtils.split(pair, "=");
-      paints.add("r".equals(keyValue[1]) ? Color.RED : Color.GREEN);
+  /**
+   * Charts are requested without user, so data is given only for snapshot of resource, which is shown by widget,
+   * and not for any snapshot, whose id is guessed.
+   *
+   * @return series of given job or empty series, if there is no such job in snapshot or snapshot isn't of given resource
+   */
+  BuildSeries loadSeries(int snapshotId, String resourceKey, int job) {
+    Metric metric = metricFinder.findByKey(BuildStabilityMetrics.JOBS.getKey());
+    if (metric == null || job < 0 || StringUtils.isBlank(resourceKey)) {
+      return new BuildSeries();
+    }
+    ResourceModel resource = session.getSingleResult(ResourceModel.class, "key", resourceKey);
+    if (resource == null || session.getSingleResult(Snapshot.class, "id", snapshotId, "resourceId", resource.getId()) == null) {
+      return new BuildSeries();
     }
+    MeasureModel measure = session.getSingleResult(MeasureModel.class, "snapshotId", snapshotId, "metricId", metric.getId());
+    String[] lines = measure == null ? new String[0] : StringUtils.split(StringUtils.defaultString(measure.getData()), '\n');
+    if (job >= lines.length) {
+      return new BuildSeries();
+    }
+    // only requested job is parsed
+    String series = JobMeasures.fromString(lines[job].trim()).get(JobMeasures.SERIES_KEY);
+    return StringUtils.isBlank(series) ? new BuildSeries() : BuildSeriesCodec.decode(series);
+  }
 
-    renderer.setColors(paints.toArray(new Paint[paints.size()]));
+  private void configureRenderer(CategoryPlot plot) {
+    ColoredBarRenderer renderer = new ColoredBarRenderer();
     renderer.setDrawBarOutline(true);
     renderer.setSeriesItemLabelsVisible(0, true);
     renderer.setItemMargin(0);
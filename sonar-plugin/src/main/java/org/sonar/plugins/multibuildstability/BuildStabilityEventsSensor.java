@@ -38,7 +38,7 @@ public class BuildStabilityEventsSensor {
     // TODO we can remove old events here
     List<Build> builds = getBuildsFromEvents(project, context);
     // TODO don't create another sensor
-    new BuildStabilitySensor().analyseBuilds(builds, context, 0, "");
+    new BuildStabilitySensor().analyseBuilds(builds, context, "");
   }
 
   public static List<Build> getBuildsFromEvents(Project project, SensorContext context) {
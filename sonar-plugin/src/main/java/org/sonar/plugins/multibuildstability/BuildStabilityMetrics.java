@@ -18,184 +18,247 @@ package org.sonar.plugins.multibuildstability;
 
 import org.sonar.api.measures.Metric;
 import org.sonar.api.measures.Metrics;
-import org.sonar.api.resources.Project;
 
 import java.util.Arrays;
 import java.util.List;
 import java.util.ArrayList;
 
 /**
+ * Measures of all CI jobs of project together. Measures of each job are kept in {@link #JOBS}.
+ *
  * @author Evgeny Mandrikov
  */
 public class BuildStabilityMetrics implements Metrics {
     public static final String DOMAIN_BUILD = "Continuous integration";
 
-    public static Metric BUILDS(int index) {
-        return new Metric(
-                          "builds_" + index,
-                          "Builds",
-                          "Number of builds",
-                          Metric.ValueType.INT,
-                          Metric.DIRECTION_NONE,
-                          false,
-                          DOMAIN_BUILD
-                          );
-    }
+    /**
+     * Maximum number of additional periods, see {@link BuildStabilitySensor#WINDOWS_PROPERTY}.
+     */
+    public static final int MAX_WINDOWS = 3;
 
-    public static Metric FAILED(int index) {
-        return new Metric(
-                          "build_failures_" + index,
-                          "Failed Builds",
-                          "Number of failed builds",
-                          Metric.ValueType.INT,
-                          Metric.DIRECTION_WORST,
-                          false,
-                          DOMAIN_BUILD
-                          );
-    }
+    public static final Metric BUILDS = new Metric(
+                                                   "builds",
+                                                   "Builds",
+                                                   "Number of builds",
+                                                   Metric.ValueType.INT,
+                                                   Metric.DIRECTION_NONE,
+                                                   false,
+                                                   DOMAIN_BUILD
+                                                   );
 
+    public static final Metric FAILED = new Metric(
+                                                   "build_failures",
+                                                   "Failed Builds",
+                                                   "Number of failed builds",
+                                                   Metric.ValueType.INT,
+                                                   Metric.DIRECTION_WORST,
+                                                   false,
+                                                   DOMAIN_BUILD
+                                                   );
 
-    public static Metric SUCCESS_RATE(int index) {
-        return new Metric(
-                          "build_success_density_" + index,
-                          "Success Rate (%)",
-                          "Ratio of successful builds",
-                          Metric.ValueType.PERCENT,
-                          Metric.DIRECTION_BETTER,
-                          false,
-                          DOMAIN_BUILD
-                          );
-    }
+    public static final Metric SUCCESS_RATE = new Metric(
+                                                   "build_success_density",
+                                                   "Success Rate (%)",
+                                                   "Ratio of successful builds",
+                                                   Metric.ValueType.PERCENT,
+                                                   Metric.DIRECTION_BETTER,
+                                                   false,
+                                                   DOMAIN_BUILD
+                                                   );
 
-    public static Metric AVG_DURATION(int index) {
-        return new Metric(
-                          "build_average_duration_" + index,
-                          "Average Duration",
-                          "Average Duration",
-                          Metric.ValueType.MILLISEC,
-                          Metric.DIRECTION_WORST,
-                          false,
-                          DOMAIN_BUILD
-                          );
-    }
+    public static final Metric AVG_DURATION = new Metric(
+                                                   "build_average_duration",
+                                                   "Average Duration",
+                                                   "Average Duration",
+                                                   Metric.ValueType.MILLISEC,
+                                                   Metric.DIRECTION_WORST,
+                                                   false,
+                                                   DOMAIN_BUILD
+                                                   );
 
-    public static Metric LONGEST_DURATION(int index) {
-        return new Metric(
-                          "build_longest_duration_" + index,
-                          "Longest duration",
-                          "Duration of longest successful build",
-                          Metric.ValueType.MILLISEC,
-                          Metric.DIRECTION_WORST,
-                          false,
-                          DOMAIN_BUILD
-                          );
-    }
+    public static final Metric LONGEST_DURATION = new Metric(
+                                                   "build_longest_duration",
+                                                   "Longest duration",
+                                                   "Duration of longest successful build",
+                                                   Metric.ValueType.MILLISEC,
+                                                   Metric.DIRECTION_WORST,
+                                                   false,
+                                                   DOMAIN_BUILD
+                                                   );
 
-    public static Metric SHORTEST_DURATION(int index) {
-        return new Metric(
-                          "build_shortest_duration_" + index,
-                          "Shortest duration",
-                          "Duration of shortest successful build",
-                          Metric.ValueType.MILLISEC,
-                          Metric.DIRECTION_WORST,
-                          false,
-                          DOMAIN_BUILD
-                          );
-    }
+    public static final Metric SHORTEST_DURATION = new Metric(
+                                                   "build_shortest_duration",
+                                                   "Shortest duration",
+                                                   "Duration of shortest successful build",
+                                                   Metric.ValueType.MILLISEC,
+                                                   Metric.DIRECTION_WORST,
+                                                   false,
+                                                   DOMAIN_BUILD
+                                                   );
 
-    public static Metric AVG_TIME_TO_FIX(int index) {
-        return new Metric(
-                          "build_average_time_to_fix_failure_" + index,
-                          "Average time to fix a failure",
-                          "Average time to fix a failure",
-                          Metric.ValueType.MILLISEC,
-                          Metric.DIRECTION_WORST,
-                          false,
-                          DOMAIN_BUILD
-                          );
-    }
+    public static final Metric MEDIAN_DURATION = new Metric(
+                                                   "build_median_duration",
+                                                   "Median duration",
+                                                   "Duration not exceeded by half of successful builds",
+                                                   Metric.ValueType.MILLISEC,
+                                                   Metric.DIRECTION_WORST,
+                                                   false,
+                                                   DOMAIN_BUILD
+                                                   );
 
-    public static Metric LONGEST_TIME_TO_FIX(int index) {
-        return new Metric(
-                          "build_longest_time_to_fix_failure_" + index,
-                          "Longest time to fix a failure",
-                          "Longest time to fix a failure",
-                          Metric.ValueType.MILLISEC,
-                          Metric.DIRECTION_WORST,
-                          false,
-                          DOMAIN_BUILD
-                          );
-    }
+    public static final Metric P90_DURATION = new Metric(
+                                                   "build_p90_duration",
+                                                   "90th percentile of duration",
+                                                   "Duration not exceeded by 90% of successful builds",
+                                                   Metric.ValueType.MILLISEC,
+                                                   Metric.DIRECTION_WORST,
+                                                   false,
+                                                   DOMAIN_BUILD
+                                                   );
 
-    public static Metric AVG_BUILDS_TO_FIX(int index) {
-        return new Metric(
-                          "build_average_builds_to_fix_failure_" + index,
-                          "Average number of builds between fixes",
-                          "Average number of builds between fixes",
-                          Metric.ValueType.INT,
-                          Metric.DIRECTION_WORST,
-                          false,
-                          DOMAIN_BUILD
-                          );
-    }
+    public static final Metric P99_DURATION = new Metric(
+                                                   "build_p99_duration",
+                                                   "99th percentile of duration",
+                                                   "Duration not exceeded by 99% of successful builds",
+                                                   Metric.ValueType.MILLISEC,
+                                                   Metric.DIRECTION_WORST,
+                                                   false,
+                                                   DOMAIN_BUILD
+                                                   );
 
-    public static Metric DURATIONS(int index) {
-        return new Metric(
-                          "build_durations_" + index,
-                          "Durations",
-                          "Durations",
-                          Metric.ValueType.DATA,
-                          Metric.DIRECTION_NONE,
-                          false,
-                          DOMAIN_BUILD
-                          );
-    }
+    public static final Metric DURATION_HISTOGRAM = new Metric(
+                                                   "build_duration_histogram",
+                                                   "Duration histogram",
+                                                   "Histogram of durations of successful builds",
+                                                   Metric.ValueType.DATA,
+                                                   Metric.DIRECTION_NONE,
+                                                   false,
+                                                   DOMAIN_BUILD
+                                                   );
+
+    public static final Metric AVG_TIME_TO_FIX = new Metric(
+                                                   "build_average_time_to_fix_failure",
+                                                   "Average time to fix a failure",
+                                                   "Average time to fix a failure",
+                                                   Metric.ValueType.MILLISEC,
+                                                   Metric.DIRECTION_WORST,
+                                                   false,
+                                                   DOMAIN_BUILD
+                                                   );
+
+    public static final Metric LONGEST_TIME_TO_FIX = new Metric(
+                                                   "build_longest_time_to_fix_failure",
+                                                   "Longest time to fix a failure",
+                                                   "Longest time to fix a failure",
+                                                   Metric.ValueType.MILLISEC,
+                                                   Metric.DIRECTION_WORST,
+                                                   false,
+                                                   DOMAIN_BUILD
+                                                   );
+
+    public static final Metric AVG_BUILDS_TO_FIX = new Metric(
+                                                   "build_average_builds_to_fix_failure",
+                                                   "Average number of builds between fixes",
+                                                   "Average number of builds between fixes",
+                                                   Metric.ValueType.INT,
+                                                   Metric.DIRECTION_WORST,
+                                                   false,
+                                                   DOMAIN_BUILD
+                                                   );
 
-    public static Metric RESULTS(int index) {
+    /**
+     * Measures of each CI job, see {@link JobMeasures}.
+     */
+    public static final Metric JOBS = new Metric(
+                                                   "build_stability_jobs",
+                                                   "Jobs",
+                                                   "Measures of each CI job",
+                                                   Metric.ValueType.DATA,
+                                                   Metric.DIRECTION_NONE,
+                                                   false,
+                                                   DOMAIN_BUILD
+                                                   );
+
+    /**
+     * Number of jobs, which builds weren't all retrieved before deadline, see {@link BuildStabilitySensor#JOB_TIMEOUT_PROPERTY}.
+     */
+    public static final Metric PARTIAL = new Metric(
+                                                   "build_stability_partial_jobs",
+                                                   "Partially retrieved jobs",
+                                                   "Number of jobs, which measures are calculated from part of builds",
+                                                   Metric.ValueType.INT,
+                                                   Metric.DIRECTION_WORST,
+                                                   false,
+                                                   DOMAIN_BUILD
+                                                   );
+
+    /**
+     * Metrics calculated for each period.
+     */
+    public static final List<Metric> PERIOD_METRICS = Arrays.asList(
+                                                                   BUILDS,
+                                                                   FAILED,
+                                                                   SUCCESS_RATE,
+                                                                   AVG_DURATION,
+                                                                   LONGEST_DURATION,
+                                                                   SHORTEST_DURATION,
+                                                                   MEDIAN_DURATION,
+                                                                   P90_DURATION,
+                                                                   P99_DURATION,
+                                                                   DURATION_HISTOGRAM,
+                                                                   AVG_TIME_TO_FIX,
+                                                                   LONGEST_TIME_TO_FIX,
+                                                                   AVG_BUILDS_TO_FIX
+                                                                   );
+
+    /**
+     * Number of days in additional period.
+     */
+    public static Metric WINDOW_DAYS(int window) {
         return new Metric(
-                          "build_results_" + index,
-                          "Results",
-                          "Results",
-                          Metric.ValueType.DATA,
+                          "build_window_days_" + window,
+                          "Days in period " + window,
+                          "Number of days in additional period " + window,
+                          Metric.ValueType.INT,
                           Metric.DIRECTION_NONE,
                           false,
                           DOMAIN_BUILD
                           );
     }
 
-    public static Metric NAME(int index) {
+    /**
+     * Returns same metric for additional period.
+     *
+     * @param window 0 for main period, otherwise number of additional period
+     */
+    public static Metric inWindow(Metric metric, int window) {
+        if (window == 0) {
+            return metric;
+        }
         return new Metric(
-                          "build_name_" + index,
-                          "Name",
-                          "Name",
-                          Metric.ValueType.DATA,
-                          Metric.DIRECTION_NONE,
-                          false,
-                          DOMAIN_BUILD
+                          metric.getKey() + "_window_" + window,
+                          metric.getName() + " (period " + window + ")",
+                          metric.getDescription() + " in additional period " + window,
+                          metric.getType(),
+                          metric.getDirection(),
+                          metric.getQualitative(),
+                          metric.getDomain()
                           );
     }
 
     public List<Metric> getMetrics() {
-        List<Metric> result = new ArrayList<Metric>(10 * 12);
-
-        for(int i = 0; i<10; i++) {
-            result.add(BUILDS(i));
-            result.add(FAILED(i));
-            result.add(SUCCESS_RATE(i));
-
-            result.add(AVG_DURATION(i));
-            result.add(LONGEST_DURATION(i));
-            result.add(SHORTEST_DURATION(i));
-
-            result.add(AVG_TIME_TO_FIX(i));
-            result.add(LONGEST_TIME_TO_FIX(i));
-            result.add(AVG_BUILDS_TO_FIX(i));
-
-            result.add(DURATIONS(i));
-            result.add(RESULTS(i));
+        List<Metric> result = new ArrayList<Metric>((PERIOD_METRICS.size() + 1) * (MAX_WINDOWS + 1));
 
-            result.add(NAME(i));
+        for(int w = 0; w <= MAX_WINDOWS; w++) {
+            for(Metric metric : PERIOD_METRICS) {
+                result.add(inWindow(metric, w));
+            }
+            if(w > 0) {
+                result.add(WINDOW_DAYS(w));
+            }
         }
+        result.add(JOBS);
+        result.add(PARTIAL);
 
         return result;
     }
@@ -37,6 +37,17 @@ import java.util.List;
         project = true,
         module = false
     ),
+    @Property(
+        key = BuildStabilitySensor.WINDOWS_PROPERTY,
+        defaultValue = BuildStabilitySensor.WINDOWS_DEFAULT_VALUE,
+        name = "Additional periods",
+        description = "Comma-separated numbers of days of up to " + BuildStabilityMetrics.MAX_WINDOWS + " additional periods to analyze, e.g. 7,90. " +
+            "Periods are whole days starting at midnight (UTC). Builds are retrieved once for longest period, " +
+            "so period longer than Days makes each analysis retrieve more builds.",
+        global = true,
+        project = true,
+        module = false
+    ),
     @Property(
         key = BuildStabilitySensor.CI_URL_PROPERTY,
         defaultValue = "",
@@ -75,6 +86,69 @@ import java.util.List;
         global = true,
         project = true,
         module = false
+    ),
+    @Property(
+        key = BuildStabilitySensor.CONCURRENCY_PROPERTY,
+        defaultValue = BuildStabilitySensor.CONCURRENCY_DEFAULT_VALUE + "",
+        name = "Concurrent requests",
+        description = "Maximum number of simultaneous requests of each CI job, used to fetch builds in parallel, when they can't be retrieved in bulk. Jobs are retrieved at the same time, so one server can get up to this number multiplied by number of parallel jobs.",
+        global = true,
+        project = true,
+        module = false
+    ),
+    @Property(
+        key = BuildStabilitySensor.PAGE_SIZE_PROPERTY,
+        defaultValue = BuildStabilitySensor.PAGE_SIZE_DEFAULT_VALUE + "",
+        name = "Page size",
+        description = "Number of builds requested at once from servers, which support retrieval of builds in bulk.",
+        global = true,
+        project = true,
+        module = false
+    ),
+    @Property(
+        key = BuildStabilitySensor.MAX_MISSES_PROPERTY,
+        defaultValue = BuildStabilitySensor.MAX_MISSES_DEFAULT_VALUE + "",
+        name = "Maximum missing builds",
+        description = "Maximum number of missing (e.g. deleted) builds probed to find next existing build, when builds are fetched one by one.",
+        global = true,
+        project = true,
+        module = false
+    ),
+    @Property(
+        key = BuildStabilitySensor.PARALLEL_JOBS_PROPERTY,
+        defaultValue = BuildStabilitySensor.PARALLEL_JOBS_DEFAULT_VALUE + "",
+        name = "Parallel jobs",
+        description = "Maximum number of CI jobs, which builds are retrieved at the same time.",
+        global = true,
+        project = true,
+        module = false
+    ),
+    @Property(
+        key = BuildStabilitySensor.JOB_TIMEOUT_PROPERTY,
+        defaultValue = BuildStabilitySensor.JOB_TIMEOUT_DEFAULT_VALUE + "",
+        name = "Job timeout",
+        description = "Maximum time in seconds spent retrieving builds of one CI job. Measures of job are calculated from builds retrieved until then and marked as partial. Zero for no limit.",
+        global = true,
+        project = true,
+        module = false
+    ),
+    @Property(
+        key = BuildStabilitySensor.RUN_TIMEOUT_PROPERTY,
+        defaultValue = BuildStabilitySensor.RUN_TIMEOUT_DEFAULT_VALUE + "",
+        name = "Analysis timeout",
+        description = "Maximum time in seconds spent retrieving builds of all CI jobs of project. Zero for no limit.",
+        global = true,
+        project = true,
+        module = false
+    ),
+    @Property(
+        key = BuildStabilitySensor.CACHE_DIR_PROPERTY,
+        defaultValue = "",
+        name = "Cache directory",
+        description = "Directory to keep finished builds between analyses, so only new builds are retrieved. Leave blank to use <i>~/.sonar/build-stability</i>.",
+        global = true,
+        project = false,
+        module = false
     )
 })
 public class BuildStabilityPlugin implements Plugin {
@@ -98,7 +172,7 @@ public class BuildStabilityPlugin implements Plugin {
         BuildStabilityMetrics.class,
         BuildStabilitySensor.class,
         BuildStabilityChart.class,
-        BuildStabilityExtensionProvider.class
+        BuildStabilityWidget.class
     );
   }
 }
@@ -23,13 +23,23 @@ import org.slf4j.LoggerFactory;
 import org.sonar.api.batch.Sensor;
 import org.sonar.api.batch.SensorContext;
 import org.sonar.api.measures.Measure;
-import org.sonar.api.measures.PropertiesBuilder;
 import org.sonar.api.resources.Project;
 import org.sonar.plugins.multibuildstability.ci.CiConnector;
+import org.sonar.plugins.multibuildstability.ci.ConnectionPool;
 import org.sonar.plugins.multibuildstability.ci.CiFactory;
 import org.sonar.plugins.multibuildstability.ci.CiConfiguration;
+import org.sonar.plugins.multibuildstability.ci.Deadline;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * @author Evgeny Mandrikov
@@ -37,11 +47,31 @@ import java.util.*;
 public class BuildStabilitySensor implements Sensor {
     public static final String DAYS_PROPERTY = "sonar.build-stability.days";
     public static final int DAYS_DEFAULT_VALUE = 30;
+    public static final String WINDOWS_PROPERTY = "sonar.build-stability.windows";
+    public static final String WINDOWS_DEFAULT_VALUE = "";
     public static final String USERNAME_PROPERTY = "sonar.build-stability.username.secured";
     public static final String PASSWORD_PROPERTY = "sonar.build-stability.password.secured";
     public static final String USE_JSECURITYCHECK_PROPERTY = "sonar.build-stability.use_jsecuritycheck";
     public static final boolean USE_JSECURITYCHECK_DEFAULT_VALUE = false;
     public static final String CI_URL_PROPERTY = "sonar.build-stability.url";
+    public static final String CONCURRENCY_PROPERTY = "sonar.build-stability.concurrency";
+    public static final int CONCURRENCY_DEFAULT_VALUE = 1;
+    public static final String PARALLEL_JOBS_PROPERTY = "sonar.build-stability.parallel_jobs";
+    public static final int PARALLEL_JOBS_DEFAULT_VALUE = 8;
+    public static final String PAGE_SIZE_PROPERTY = "sonar.build-stability.page_size";
+    public static final int PAGE_SIZE_DEFAULT_VALUE = CiConnector.DEFAULT_PAGE_SIZE;
+    public static final String MAX_MISSES_PROPERTY = "sonar.build-stability.max_misses";
+    public static final int MAX_MISSES_DEFAULT_VALUE = CiConnector.DEFAULT_MAX_MISSES;
+    public static final String CACHE_DIR_PROPERTY = "sonar.build-stability.cache_dir";
+    public static final String JOB_TIMEOUT_PROPERTY = "sonar.build-stability.job_timeout";
+    public static final int JOB_TIMEOUT_DEFAULT_VALUE = 300;
+    public static final String RUN_TIMEOUT_PROPERTY = "sonar.build-stability.run_timeout";
+    public static final int RUN_TIMEOUT_DEFAULT_VALUE = 900;
+
+    /**
+     * Time given to retrieval to finish after its deadline, e.g. to finish parsing of received response.
+     */
+    private static final long DEADLINE_GRACE = 30 * 1000L;
 
     public boolean shouldExecuteOnProject(Project project) {
         return project.isRoot() && !getCiConfigurations(project).isEmpty();
@@ -65,112 +95,251 @@ public class BuildStabilitySensor implements Sensor {
         String username = project.getConfiguration().getString(USERNAME_PROPERTY);
         String password = project.getConfiguration().getString(PASSWORD_PROPERTY);
         boolean useJSecurityCheck = project.getConfiguration().getBoolean(USE_JSECURITYCHECK_PROPERTY, USE_JSECURITYCHECK_DEFAULT_VALUE);
+        int concurrency = project.getConfiguration().getInt(CONCURRENCY_PROPERTY, CONCURRENCY_DEFAULT_VALUE);
+        int pageSize = project.getConfiguration().getInt(PAGE_SIZE_PROPERTY, PAGE_SIZE_DEFAULT_VALUE);
+        int maxMisses = project.getConfiguration().getInt(MAX_MISSES_PROPERTY, MAX_MISSES_DEFAULT_VALUE);
+        int parallelJobs = project.getConfiguration().getInt(PARALLEL_JOBS_PROPERTY, PARALLEL_JOBS_DEFAULT_VALUE);
+        int days = project.getConfiguration().getInt(DAYS_PROPERTY, DAYS_DEFAULT_VALUE);
+        long jobTimeout = project.getConfiguration().getInt(JOB_TIMEOUT_PROPERTY, JOB_TIMEOUT_DEFAULT_VALUE) * 1000L;
+        // Whole run is bounded, because jobs may wait for each other, when there are more jobs than threads
+        Deadline runDeadline = Deadline.after(project.getConfiguration().getInt(RUN_TIMEOUT_PROPERTY, RUN_TIMEOUT_DEFAULT_VALUE) * 1000L);
+        List<Integer> windowDays = getWindows(project);
+        // All periods are calculated from builds of longest one
+        long[] windows = new long[windowDays.size() + 1];
+        windows[0] = daysAgo(days);
+        long longest = windows[0];
+        for (int w = 1; w < windows.length; w++) {
+            windows[w] = daysAgo(windowDays.get(w - 1));
+            longest = Math.min(longest, windows[w]);
+            context.saveMeasure(new Measure(BuildStabilityMetrics.WINDOW_DAYS(w), (double) windowDays.get(w - 1)));
+        }
+        Date date = new Date(longest);
+        File cacheDirectory = getCacheDirectory(project);
 
         List<CiConfiguration> ciConfigs = getCiConfigurations(project);
-        int i=0;
-        for(CiConfiguration config : ciConfigs) {
-            logger.info("CI URL: {}", config.toString());
-            try {
-                CiConnector connector = CiFactory.create(config, username, password, useJSecurityCheck);
-                if(connector == null) {
-                    logger.warn("Unknown CiManagement system or incorrect URL: {}", config.toString());
-                } else {
-                    int daysToRetrieve = project.getConfiguration().getInt(DAYS_PROPERTY, DAYS_DEFAULT_VALUE);
-                    Calendar calendar = Calendar.getInstance();
-                    calendar.add(Calendar.DAY_OF_MONTH, -daysToRetrieve);
-                    Date date = calendar.getTime();
-                    List<Build> builds = connector.getBuildsSince(date);
-                    logger.info("Retrieved {} builds since {}", builds.size(), date);
-                    analyseBuilds(builds, context, i++, config.getTitle());
+        int threads = Math.max(1, Math.min(ciConfigs.size(), parallelJobs));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        // Enough connections for all jobs retrieved at the same time, even when they are on one server
+        ConnectionPool connectionPool = new ConnectionPool(concurrency, threads);
+        try {
+            // Retrieval of builds is slow, so all jobs are fetched at the same time
+            List<Future<BuildHistory>> retrievals = new ArrayList<Future<BuildHistory>>(ciConfigs.size());
+            List<CiConnector> connectors = new ArrayList<CiConnector>(ciConfigs.size());
+            for(CiConfiguration config : ciConfigs) {
+                logger.info("CI URL: {}", config.toString());
+                Future<BuildHistory> retrieval = null;
+                CiConnector connector = null;
+                try {
+                    connector = CiFactory.create(config, username, password, useJSecurityCheck, connectionPool);
+                    if(connector == null) {
+                        logger.warn("Unknown CiManagement system or incorrect URL: {}", config.toString());
+                    } else {
+                        connector.setConcurrency(concurrency);
+                        connector.setPageSize(pageSize);
+                        connector.setMaxMisses(maxMisses);
+                        connector.setCacheDirectory(cacheDirectory, config);
+                        retrieval = executor.submit(retrieveBuilds(connector, date, runDeadline, jobTimeout));
+                    }
+                } catch (Exception e) {
+                    logger.error(e.getMessage(), e);
                 }
-            } catch (Exception e) {
-                logger.error(e.getMessage(), e);
+                retrievals.add(retrieval);
+                connectors.add(connector);
             }
+
+            // Measures are calculated by this thread and in order of configurations
+            BuildStatistics[] totals = newStatistics(windows.length);
+            List<JobMeasures> jobs = new ArrayList<JobMeasures>();
+            for(int j = 0; j < ciConfigs.size(); j++) {
+                if(retrievals.get(j) == null) {
+                    continue;
+                }
+                try {
+                    BuildHistory history = getResult(retrievals.get(j), runDeadline);
+                    boolean partial = connectors.get(j).isPartial();
+                    if (partial) {
+                        logger.warn("Retrieval of builds from {} stopped by deadline, measures are calculated from {} builds retrieved so far", ciConfigs.get(j), history.size());
+                    } else {
+                        logger.info("Retrieved {} builds since {} from {}", new Object[]{history.size(), date, ciConfigs.get(j)});
+                    }
+                    // Saved statistics are only updated from complete histories, because builds missing now wouldn't be added later
+                    JobStatistics statistics = partial ? new JobStatistics() : loadStatistics(cacheDirectory, ciConfigs.get(j));
+                    jobs.add(analyseBuilds(history, statistics, getJobName(ciConfigs.get(j)), windows, totals, partial));
+                    if (!partial) {
+                        try {
+                            statistics.save();
+                        } catch (IOException e) {
+                            logger.warn("Unable to save statistics of builds: {}", e.getMessage());
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    logger.error("Interrupted while retrieving builds", e);
+                    return;
+                } catch (ExecutionException e) {
+                    logger.error(e.getCause().getMessage(), e.getCause());
+                } catch (TimeoutException e) {
+                    retrievals.get(j).cancel(true);
+                    logger.error("Retrieval of builds from {} didn't finish after deadline, job is skipped", ciConfigs.get(j));
+                } catch (Exception e) {
+                    logger.error(e.getMessage(), e);
+                }
+            }
+            saveMeasures(context, totals, jobs);
+        } finally {
+            executor.shutdownNow();
+            connectionPool.shutdown();
         }
     }
 
-    protected void analyseBuilds(List<Build> builds, SensorContext context, int ciIndex, String buildName) {
-        Logger logger = LoggerFactory.getLogger(getClass());
-
-        Collections.sort(builds, new Comparator<Build>() {
-                public int compare(Build o1, Build o2) {
-                    return o1.getNumber() - o2.getNumber();
-                }
-            });
-
-        PropertiesBuilder<Integer, Double> durationsBuilder = new PropertiesBuilder<Integer, Double>(BuildStabilityMetrics.DURATIONS(ciIndex));
-        PropertiesBuilder<Integer, String> resultsBuilder = new PropertiesBuilder<Integer, String>(BuildStabilityMetrics.RESULTS(ciIndex));
-
-        double successful = 0;
-        double failed = 0;
-        double duration = 0;
-        double shortest = Double.POSITIVE_INFINITY;
-        double longest = Double.NEGATIVE_INFINITY;
-
-        double totalTimeToFix = 0;
-        double totalBuildsToFix = 0;
-        double longestTimeToFix = Double.NEGATIVE_INFINITY;
-        int fixes = 0;
-        Build firstFailed = null;
-
-        for (Build build : builds) {
-            logger.debug(build.toString());
-
-            int buildNumber = build.getNumber();
-            double buildDuration = build.getDuration();
-            resultsBuilder.add(buildNumber, build.isSuccessful() ? "g" : "r");
-            durationsBuilder.add(buildNumber, buildDuration / 1000);
-            if (build.isSuccessful()) {
-                successful++;
-                duration += buildDuration;
-                shortest = Math.min(shortest, buildDuration);
-                longest = Math.max(longest, buildDuration);
-                if (firstFailed != null) {
-                    // Build fixed
-                    long buildsToFix = build.getNumber() - firstFailed.getNumber();
-                    totalBuildsToFix += buildsToFix;
-                    double timeToFix = build.getTimestamp() - firstFailed.getTimestamp();
-                    totalTimeToFix += timeToFix;
-                    longestTimeToFix = Math.max(longestTimeToFix, timeToFix);
-                    fixes++;
-                    firstFailed = null;
+    /**
+     * Periods are measured in whole days, like {@link JobStatistics} aggregates builds, i.e. period of N days
+     * starts at midnight (UTC) N days ago rather than exactly N * 24 hours ago.
+     *
+     * @return numbers of days in additional periods, at most {@link BuildStabilityMetrics#MAX_WINDOWS}, none by default
+     */
+    public static List<Integer> getWindows(Project project) {
+        String[] values = project.getConfiguration().containsKey(WINDOWS_PROPERTY)
+            ? project.getConfiguration().getStringArray(WINDOWS_PROPERTY)
+            : StringUtils.split(WINDOWS_DEFAULT_VALUE, ',');
+        List<Integer> windows = new ArrayList<Integer>();
+        for (String value : values) {
+            for (String days : StringUtils.split(value, ", ")) {
+                if (windows.size() == BuildStabilityMetrics.MAX_WINDOWS) {
+                    LoggerFactory.getLogger(BuildStabilitySensor.class).warn("Only {} additional periods supported, ignoring others", BuildStabilityMetrics.MAX_WINDOWS);
+                    return windows;
                 }
-            } else {
-                failed++;
-                if (firstFailed == null) {
-                    // Build failed
-                    firstFailed = build;
+                try {
+                    windows.add(Math.max(1, Integer.parseInt(days)));
+                } catch (NumberFormatException e) {
+                    LoggerFactory.getLogger(BuildStabilitySensor.class).warn("Ignoring incorrect number of days: {}", days);
                 }
             }
         }
+        return windows;
+    }
+
+    private static JobStatistics loadStatistics(File cacheDirectory, CiConfiguration config) {
+        JobStatistics statistics = new JobStatistics(cacheDirectory, config);
+        try {
+            statistics.load();
+        } catch (IOException e) {
+            LoggerFactory.getLogger(BuildStabilitySensor.class).warn("Ignoring statistics of builds: {}", e.getMessage());
+        }
+        return statistics;
+    }
 
-        double count = successful + failed;
+    private static long daysAgo(int days) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.add(Calendar.DAY_OF_MONTH, -days);
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * Builds are cached outside of project, so cache survives clean of working directory.
+     */
+    public static File getCacheDirectory(Project project) {
+        String dir = project.getConfiguration().getString(CACHE_DIR_PROPERTY);
+        if (StringUtils.isBlank(dir)) {
+            return new File(System.getProperty("user.home"), ".sonar/build-stability");
+        }
+        return new File(dir);
+    }
 
-        context.saveMeasure(new Measure(BuildStabilityMetrics.BUILDS(ciIndex), count));
-        context.saveMeasure(new Measure(BuildStabilityMetrics.FAILED(ciIndex), failed));
-        context.saveMeasure(new Measure(BuildStabilityMetrics.SUCCESS_RATE(ciIndex), divide(successful, count) * 100));
+    /**
+     * Deadline of job starts, when its retrieval starts, which may be later than start of run.
+     */
+    private Callable<BuildHistory> retrieveBuilds(final CiConnector connector, final Date date, final Deadline runDeadline, final long jobTimeout) {
+        return new Callable<BuildHistory>() {
+            public BuildHistory call() throws Exception {
+                connector.setDeadline(runDeadline.min(Deadline.after(jobTimeout)));
+                return connector.getBuildHistorySince(date);
+            }
+        };
+    }
 
-        context.saveMeasure(new Measure(BuildStabilityMetrics.AVG_DURATION(ciIndex), divide(duration, successful)));
-        context.saveMeasure(new Measure(BuildStabilityMetrics.LONGEST_DURATION(ciIndex), normalize(longest)));
-        context.saveMeasure(new Measure(BuildStabilityMetrics.SHORTEST_DURATION(ciIndex), normalize(shortest)));
+    /**
+     * Requests stop at deadline, so retrieval is only waited for a bit longer than that.
+     */
+    private static BuildHistory getResult(Future<BuildHistory> retrieval, Deadline deadline) throws InterruptedException, ExecutionException, TimeoutException {
+        if (deadline == Deadline.NONE) {
+            return retrieval.get();
+        }
+        return retrieval.get(deadline.remaining() + DEADLINE_GRACE, TimeUnit.MILLISECONDS);
+    }
 
-        context.saveMeasure(new Measure(BuildStabilityMetrics.AVG_TIME_TO_FIX(ciIndex), divide(totalTimeToFix, fixes)));
-        context.saveMeasure(new Measure(BuildStabilityMetrics.LONGEST_TIME_TO_FIX(ciIndex), normalize(longestTimeToFix)));
-        context.saveMeasure(new Measure(BuildStabilityMetrics.AVG_BUILDS_TO_FIX(ciIndex), divide(totalBuildsToFix, fixes)));
+    private static String getJobName(CiConfiguration config) {
+        return StringUtils.isBlank(config.getTitle()) ? config.getUrl() : config.getTitle();
+    }
 
-        if (!builds.isEmpty()) {
-            context.saveMeasure(durationsBuilder.build());
-            context.saveMeasure(resultsBuilder.build());
+    private static BuildStatistics[] newStatistics(int windows) {
+        BuildStatistics[] statistics = new BuildStatistics[windows];
+        for (int w = 0; w < windows; w++) {
+            statistics[w] = new BuildStatistics();
         }
+        return statistics;
+    }
 
-        context.saveMeasure(new Measure(BuildStabilityMetrics.NAME(ciIndex), buildName));
+    /**
+     * Analyses builds of one job in main period.
+     */
+    protected void analyseBuilds(List<Build> builds, SensorContext context, String buildName) {
+        BuildStatistics[] totals = newStatistics(1);
+        JobMeasures job = analyseBuilds(BuildHistory.of(builds), new JobStatistics(), buildName, new long[]{Long.MIN_VALUE}, totals);
+        saveMeasures(context, totals, Collections.singletonList(job));
     }
 
-    private double normalize(double value) {
-        return Double.isInfinite(value) ? 0 : value;
+    protected JobMeasures analyseBuilds(BuildHistory history, JobStatistics statistics, String buildName, long[] windows, BuildStatistics[] totals) {
+        return analyseBuilds(history, statistics, buildName, windows, totals, false);
     }
 
-    private double divide(double v1, double v2) {
-        return v2 == 0 ? 0 : v1 / v2;
+    /**
+     * Calculates measures of one job for several periods. Only builds, which are not yet in given statistics, are processed.
+     * Builds in progress are ignored.
+     *
+     * @param windows start of main period, followed by starts of additional periods
+     * @param totals  statistics of all jobs for each period, updated by this method
+     * @param partial true, if not all builds since start of periods were retrieved
+     */
+    protected JobMeasures analyseBuilds(BuildHistory history, JobStatistics statistics, String buildName, long[] windows, BuildStatistics[] totals, boolean partial) {
+        long longest = windows[0];
+        for (long window : windows) {
+            longest = Math.min(longest, window);
+        }
+        statistics.update(history, longest, System.currentTimeMillis());
+        JobMeasures job = new JobMeasures(buildName);
+        for (int w = 0; w < windows.length; w++) {
+            BuildStatistics period = statistics.getStatistics(windows[w]);
+            period.addTo(job, w);
+            totals[w].merge(period);
+        }
+
+        BuildSeries series = new BuildSeries(history.size());
+        long startDay = JobStatistics.day(windows[0]);
+        for (int i = 0; i < history.size(); i++) {
+            if (history.isBuilding(i) || JobStatistics.day(history.getTimestamp(i)) < startDay) {
+                continue;
+            }
+            series.add(history.getNumber(i), history.getDuration(i), history.isSuccessful(i));
+        }
+        job.put(JobMeasures.SERIES_KEY, BuildSeriesCodec.encode(series));
+        if (partial) {
+            job.put(BuildStabilityMetrics.PARTIAL, 1);
+        }
+        return job;
+    }
+
+    protected void saveMeasures(SensorContext context, BuildStatistics[] totals, List<JobMeasures> jobs) {
+        for (int w = 0; w < totals.length; w++) {
+            totals[w].save(context, w);
+        }
+        int partial = 0;
+        for (JobMeasures job : jobs) {
+            if (job.getValue(BuildStabilityMetrics.PARTIAL) != null) {
+                partial++;
+            }
+        }
+        context.saveMeasure(new Measure(BuildStabilityMetrics.PARTIAL, (double) partial));
+        context.saveMeasure(new Measure(BuildStabilityMetrics.JOBS, JobMeasures.convertToString(jobs)));
     }
 }
@@ -20,29 +20,33 @@ import org.sonar.api.web.AbstractRubyTemplate;
 import org.sonar.api.web.NavigationSection;
 import org.sonar.api.web.RubyRailsWidget;
 import org.sonar.api.web.UserRole;
+import org.sonar.api.web.WidgetProperties;
+import org.sonar.api.web.WidgetProperty;
+import org.sonar.api.web.WidgetPropertyType;
 
 /**
+ * Shows CI jobs of project, see {@link JobMeasures}. Property {@link #JOB_PROPERTY} selects jobs to show.
+ *
  * @author Evgeny Mandrikov
  */
 @NavigationSection(NavigationSection.RESOURCE)
 @UserRole(UserRole.USER)
+@WidgetProperties({
+    @WidgetProperty(
+        key = BuildStabilityWidget.JOB_PROPERTY,
+        type = WidgetPropertyType.STRING,
+        description = "Comma-separated names of jobs to show. All jobs are shown, if empty."
+    )
+})
 public class BuildStabilityWidget extends AbstractRubyTemplate implements RubyRailsWidget {
-    private final int index;
-
-    public BuildStabilityWidget(int index) {
-        this.index = index;
-    }
-
-    public int getIndex() {
-        return index;
-    }
+    public static final String JOB_PROPERTY = "job";
 
     public String getId() {
-        return "buildstability-widget-" + index;
+        return "buildstability-widget";
     }
 
     public String getTitle() {
-        return "BuildStability widget (" + index + ")";
+        return "BuildStability widget";
     }
 
     @Override
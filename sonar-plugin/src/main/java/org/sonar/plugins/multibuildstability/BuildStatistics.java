@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability;
+
+import org.apache.commons.lang.StringUtils;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.measures.Measure;
+import org.sonar.api.measures.Metric;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Aggregates of builds of one job in one period. Statistics of adjacent periods can be merged.
+ * Failure streaks are tracked by {@link JobStatistics}, which reports fixes with {@link #addFix(long, long)}.
+ */
+public class BuildStatistics {
+  private static final String SUCCESSFUL_FIELD = "ok";
+  private static final String FAILED_FIELD = "fail";
+  private static final String DURATION_FIELD = "dur";
+  private static final String SHORTEST_FIELD = "min";
+  private static final String LONGEST_FIELD = "max";
+  private static final String FIXES_FIELD = "fixes";
+  private static final String TIME_TO_FIX_FIELD = "ttf";
+  private static final String BUILDS_TO_FIX_FIELD = "btf";
+  private static final String LONGEST_TIME_TO_FIX_FIELD = "lttf";
+
+  private int successful;
+  private int failed;
+  /**
+   * Sum of durations of successful builds.
+   */
+  private long duration;
+  private int shortest = Integer.MAX_VALUE;
+  private int longest = -1;
+  private DurationHistogram histogram = new DurationHistogram();
+
+  private long totalTimeToFix;
+  private long totalBuildsToFix;
+  private long longestTimeToFix = -1;
+  private int fixes;
+
+  /**
+   * @param duration in milliseconds
+   */
+  public void addBuild(int duration, boolean successful) {
+    if (successful) {
+      this.successful++;
+      this.duration += duration;
+      shortest = Math.min(shortest, duration);
+      longest = Math.max(longest, duration);
+      histogram.record(duration);
+    } else {
+      failed++;
+    }
+  }
+
+  /**
+   * @param buildsToFix number of builds between first failed build and successful one
+   * @param timeToFix   time in milliseconds between first failed build and successful one
+   */
+  public void addFix(long buildsToFix, long timeToFix) {
+    totalBuildsToFix += buildsToFix;
+    totalTimeToFix += timeToFix;
+    longestTimeToFix = Math.max(longestTimeToFix, timeToFix);
+    fixes++;
+  }
+
+  public BuildStatistics merge(BuildStatistics other) {
+    successful += other.successful;
+    failed += other.failed;
+    duration += other.duration;
+    shortest = Math.min(shortest, other.shortest);
+    longest = Math.max(longest, other.longest);
+    histogram.merge(other.histogram);
+    totalTimeToFix += other.totalTimeToFix;
+    totalBuildsToFix += other.totalBuildsToFix;
+    longestTimeToFix = Math.max(longestTimeToFix, other.longestTimeToFix);
+    fixes += other.fixes;
+    return this;
+  }
+
+  public int getCount() {
+    return successful + failed;
+  }
+
+  /**
+   * Saves measures of whole project.
+   *
+   * @param window 0 for main period, otherwise number of additional period
+   */
+  public void save(SensorContext context, int window) {
+    for (Map.Entry<Metric, Double> entry : getValues().entrySet()) {
+      context.saveMeasure(new Measure(BuildStabilityMetrics.inWindow(entry.getKey(), window), entry.getValue()));
+    }
+    if (!histogram.isEmpty()) {
+      // kept to merge percentiles of several jobs or periods
+      Metric metric = BuildStabilityMetrics.inWindow(BuildStabilityMetrics.DURATION_HISTOGRAM, window);
+      context.saveMeasure(new Measure(metric, histogram.convertToString()));
+    }
+  }
+
+  /**
+   * Adds measures of one job.
+   *
+   * @param window 0 for main period, otherwise number of additional period
+   */
+  public void addTo(JobMeasures job, int window) {
+    for (Map.Entry<Metric, Double> entry : getValues().entrySet()) {
+      job.put(BuildStabilityMetrics.inWindow(entry.getKey(), window), entry.getValue());
+    }
+    if (!histogram.isEmpty()) {
+      job.put(BuildStabilityMetrics.inWindow(BuildStabilityMetrics.DURATION_HISTOGRAM, window).getKey(), histogram.convertToString());
+    }
+  }
+
+  private Map<Metric, Double> getValues() {
+    double count = getCount();
+    Map<Metric, Double> values = new LinkedHashMap<Metric, Double>();
+
+    values.put(BuildStabilityMetrics.BUILDS, count);
+    values.put(BuildStabilityMetrics.FAILED, (double) failed);
+    values.put(BuildStabilityMetrics.SUCCESS_RATE, divide(successful, count) * 100);
+
+    values.put(BuildStabilityMetrics.AVG_DURATION, divide(duration, successful));
+    values.put(BuildStabilityMetrics.LONGEST_DURATION, successful == 0 ? 0.0 : longest);
+    values.put(BuildStabilityMetrics.SHORTEST_DURATION, successful == 0 ? 0.0 : shortest);
+    values.put(BuildStabilityMetrics.MEDIAN_DURATION, (double) histogram.getValueAtPercentile(50));
+    values.put(BuildStabilityMetrics.P90_DURATION, (double) histogram.getValueAtPercentile(90));
+    values.put(BuildStabilityMetrics.P99_DURATION, (double) histogram.getValueAtPercentile(99));
+
+    values.put(BuildStabilityMetrics.AVG_TIME_TO_FIX, divide(totalTimeToFix, fixes));
+    values.put(BuildStabilityMetrics.LONGEST_TIME_TO_FIX, fixes == 0 ? 0.0 : longestTimeToFix);
+    values.put(BuildStabilityMetrics.AVG_BUILDS_TO_FIX, divide(totalBuildsToFix, fixes));
+    return values;
+  }
+
+  private static double divide(double v1, double v2) {
+    return v2 == 0 ? 0 : v1 / v2;
+  }
+
+  /**
+   * Format is similar to {@link Build#convertToString()}, histogram follows after tab.
+   */
+  public String convertToString() {
+    StringBuilder sb = new StringBuilder();
+    append(sb, SUCCESSFUL_FIELD, successful);
+    append(sb, FAILED_FIELD, failed);
+    append(sb, DURATION_FIELD, duration);
+    if (successful > 0) {
+      append(sb, SHORTEST_FIELD, shortest);
+      append(sb, LONGEST_FIELD, longest);
+    }
+    if (fixes > 0) {
+      append(sb, FIXES_FIELD, fixes);
+      append(sb, TIME_TO_FIX_FIELD, totalTimeToFix);
+      append(sb, BUILDS_TO_FIX_FIELD, totalBuildsToFix);
+      append(sb, LONGEST_TIME_TO_FIX_FIELD, longestTimeToFix);
+    }
+    return sb.append('\t').append(histogram.convertToString()).toString();
+  }
+
+  private static void append(StringBuilder sb, String field, long value) {
+    sb.append(field).append('=').append(value).append(';');
+  }
+
+  public static BuildStatistics fromString(String data) {
+    BuildStatistics statistics = new BuildStatistics();
+    for (String field : StringUtils.split(StringUtils.substringBefore(data, "\t"), ';')) {
+      String key = StringUtils.substringBefore(field, "=");
+      long value = Long.parseLong(StringUtils.substringAfter(field, "="));
+      if (SUCCESSFUL_FIELD.equals(key)) {
+        statistics.successful = (int) value;
+      } else if (FAILED_FIELD.equals(key)) {
+        statistics.failed = (int) value;
+      } else if (DURATION_FIELD.equals(key)) {
+        statistics.duration = value;
+      } else if (SHORTEST_FIELD.equals(key)) {
+        statistics.shortest = (int) value;
+      } else if (LONGEST_FIELD.equals(key)) {
+        statistics.longest = (int) value;
+      } else if (FIXES_FIELD.equals(key)) {
+        statistics.fixes = (int) value;
+      } else if (TIME_TO_FIX_FIELD.equals(key)) {
+        statistics.totalTimeToFix = value;
+      } else if (BUILDS_TO_FIX_FIELD.equals(key)) {
+        statistics.totalBuildsToFix = value;
+      } else if (LONGEST_TIME_TO_FIX_FIELD.equals(key)) {
+        statistics.longestTimeToFix = value;
+      }
+    }
+    statistics.histogram = DurationHistogram.fromString(StringUtils.substringAfter(data, "\t"));
+    return statistics;
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability;
+
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Rendered chart images, least recently used images are evicted, when total size exceeds limit.
+ * Images must not be modified after they are put into cache.
+ */
+public class ChartCache {
+  public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+  private final long maxBytes;
+  private final Map<String, BufferedImage> images = new LinkedHashMap<String, BufferedImage>(16, 0.75f, true);
+  private long bytes;
+  private long hits;
+  private long misses;
+
+  public ChartCache() {
+    this(DEFAULT_MAX_BYTES);
+  }
+
+  public ChartCache(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * @return cached image or null
+   */
+  public synchronized BufferedImage get(String key) {
+    BufferedImage image = images.get(key);
+    if (image == null) {
+      misses++;
+    } else {
+      hits++;
+    }
+    return image;
+  }
+
+  /**
+   * Images larger than the whole cache aren't kept.
+   */
+  public synchronized void put(String key, BufferedImage image) {
+    long size = sizeOf(image);
+    if (size > maxBytes) {
+      return;
+    }
+    BufferedImage previous = images.put(key, image);
+    if (previous != null) {
+      bytes -= sizeOf(previous);
+    }
+    bytes += size;
+    Iterator<BufferedImage> eldest = images.values().iterator();
+    while (bytes > maxBytes) {
+      bytes -= sizeOf(eldest.next());
+      eldest.remove();
+    }
+  }
+
+  public synchronized int size() {
+    return images.size();
+  }
+
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  public synchronized void clear() {
+    images.clear();
+    bytes = 0;
+  }
+
+  /**
+   * Approximate memory used by pixels of image.
+   */
+  static long sizeOf(BufferedImage image) {
+    return 4L * image.getWidth() * image.getHeight();
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability;
+
+import org.apache.commons.lang.StringUtils;
+import org.sonar.api.measures.Metric;
+import org.sonar.api.utils.SonarException;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures of one CI job. Jobs of project are saved together as {@link BuildStabilityMetrics#JOBS},
+ * one job per line, each line has URL-encoded pairs of metric key and value separated by '&amp;',
+ * e.g. "name=Nightly&amp;builds=12.0&amp;build_failures=1.0".
+ */
+public class JobMeasures {
+  public static final String NAME_KEY = "name";
+  /**
+   * Builds of main period in form of {@link BuildSeriesCodec}.
+   */
+  public static final String SERIES_KEY = "series";
+
+  private static final String ENCODING = "UTF-8";
+
+  private final Map<String, String> values = new LinkedHashMap<String, String>();
+
+  public JobMeasures(String name) {
+    put(NAME_KEY, name);
+  }
+
+  private JobMeasures() {
+  }
+
+  public String getName() {
+    return get(NAME_KEY);
+  }
+
+  public String get(String key) {
+    return values.get(key);
+  }
+
+  public Double getValue(Metric metric) {
+    String value = get(metric.getKey());
+    return value == null ? null : Double.valueOf(value);
+  }
+
+  public Map<String, String> getValues() {
+    return Collections.unmodifiableMap(values);
+  }
+
+  public JobMeasures put(String key, String value) {
+    values.put(key, StringUtils.defaultString(value));
+    return this;
+  }
+
+  public JobMeasures put(Metric metric, double value) {
+    return put(metric.getKey(), String.valueOf(value));
+  }
+
+  public String convertToString() {
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String, String> entry : values.entrySet()) {
+      if (sb.length() > 0) {
+        sb.append('&');
+      }
+      sb.append(encode(entry.getKey())).append('=').append(encode(entry.getValue()));
+    }
+    return sb.toString();
+  }
+
+  public static JobMeasures fromString(String line) {
+    JobMeasures job = new JobMeasures();
+    for (String pair : StringUtils.split(line, '&')) {
+      job.put(decode(StringUtils.substringBefore(pair, "=")), decode(StringUtils.substringAfter(pair, "=")));
+    }
+    return job;
+  }
+
+  public static String convertToString(List<JobMeasures> jobs) {
+    StringBuilder sb = new StringBuilder();
+    for (JobMeasures job : jobs) {
+      sb.append(job.convertToString()).append('\n');
+    }
+    return sb.toString();
+  }
+
+  public static List<JobMeasures> parseAll(String data) {
+    List<JobMeasures> jobs = new ArrayList<JobMeasures>();
+    for (String line : StringUtils.split(StringUtils.defaultString(data), '\n')) {
+      if (StringUtils.isNotBlank(line)) {
+        jobs.add(fromString(line.trim()));
+      }
+    }
+    return jobs;
+  }
+
+  private static String encode(String value) {
+    try {
+      return URLEncoder.encode(value, ENCODING);
+    } catch (UnsupportedEncodingException e) {
+      throw new SonarException(e);
+    }
+  }
+
+  private static String decode(String value) {
+    try {
+      return URLDecoder.decode(value, ENCODING);
+    } catch (UnsupportedEncodingException e) {
+      throw new SonarException(e);
+    }
+  }
+}
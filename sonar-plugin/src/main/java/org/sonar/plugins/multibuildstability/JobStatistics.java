@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.sonar.plugins.multibuildstability.ci.CiConfiguration;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aggregates of one job, kept between analyses, so only builds added since previous analysis are processed.
+ * Builds are aggregated by days, so periods start at midnight (UTC) and days before longest period are dropped.
+ */
+public class JobStatistics {
+  private static final long DAY = 24L * 60 * 60 * 1000;
+
+  /**
+   * Build in progress for longer than this is considered as abandoned and doesn't delay processing of later builds.
+   */
+  private static final long MAX_BUILDING_TIME = DAY;
+
+  private static final String ENCODING = "UTF-8";
+  private static final String SOURCE = "source=";
+  private static final String LAST = "last=";
+  private static final String SINCE = "since=";
+  private static final String STREAK = "streak=";
+  private static final String DAY_PREFIX = "day=";
+
+  private final File file;
+  private final String source;
+
+  private final TreeMap<Long, BuildStatistics> days = new TreeMap<Long, BuildStatistics>();
+
+  /**
+   * Highest number of processed build.
+   */
+  private int last;
+
+  /**
+   * First day covered by aggregates.
+   */
+  private long since;
+
+  /**
+   * Number and timestamp of first build of current failure streak, if {@link #failing}.
+   */
+  private boolean failing;
+  private int firstFailedNumber;
+  private long firstFailedTimestamp;
+
+  /**
+   * Creates statistics, which are not saved.
+   */
+  public JobStatistics() {
+    this(null, "");
+  }
+
+  public JobStatistics(File directory, CiConfiguration config) {
+    this(directory, config.getSource());
+  }
+
+  private JobStatistics(File directory, String source) {
+    this.source = source;
+    if (directory == null) {
+      this.file = null;
+    } else {
+      String name = "statistics-" + Integer.toHexString(source.hashCode());
+      this.file = new File(directory, name + ".txt");
+    }
+    clear();
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  public int getLast() {
+    return last;
+  }
+
+  /**
+   * Processes builds, which weren't processed yet, and drops aggregates before given date.
+   * Aggregates are recalculated from scratch, if they don't cover given date or if numbers of builds
+   * were reset on server, e.g. because job was recreated.
+   * Builds in progress stop processing, so later builds are processed in order once they finish.
+   */
+  public void update(BuildHistory history, long start, long now) {
+    long startDay = day(start);
+    if (startDay < since) {
+      // period became longer
+      clear();
+    } else if (history.size() > 0 && history.getNumber(history.size() - 1) < last) {
+      // newest build is older than processed one, so numbers started again
+      clear();
+    }
+    for (int i = 0; i < history.size(); i++) {
+      int number = history.getNumber(i);
+      if (number <= last) {
+        continue;
+      }
+      long timestamp = history.getTimestamp(i);
+      if (history.isBuilding(i)) {
+        if (now - timestamp < MAX_BUILDING_TIME) {
+          break;
+        }
+        continue;
+      }
+      add(number, timestamp, history.getDuration(i), history.isSuccessful(i));
+    }
+    days.headMap(startDay).clear();
+    since = Math.max(since, startDay);
+  }
+
+  private void add(int number, long timestamp, int duration, boolean successful) {
+    BuildStatistics statistics = days.get(day(timestamp));
+    if (statistics == null) {
+      statistics = new BuildStatistics();
+      days.put(day(timestamp), statistics);
+    }
+    statistics.addBuild(duration, successful);
+    if (successful) {
+      if (failing) {
+        // Build fixed
+        statistics.addFix(number - firstFailedNumber, timestamp - firstFailedTimestamp);
+        failing = false;
+      }
+    } else if (!failing) {
+      // Build failed
+      failing = true;
+      firstFailedNumber = number;
+      firstFailedTimestamp = timestamp;
+    }
+    last = number;
+  }
+
+  /**
+   * @return aggregates of days since day of given date
+   */
+  public BuildStatistics getStatistics(long start) {
+    BuildStatistics result = new BuildStatistics();
+    for (BuildStatistics statistics : days.tailMap(day(start)).values()) {
+      result.merge(statistics);
+    }
+    return result;
+  }
+
+  /**
+   * @return day since epoch in UTC
+   */
+  static long day(long timestamp) {
+    if (timestamp == Long.MIN_VALUE) {
+      return Long.MIN_VALUE;
+    }
+    return timestamp >= 0 ? timestamp / DAY : (timestamp + 1) / DAY - 1;
+  }
+
+  public void load() throws IOException {
+    clear();
+    if (file == null || !file.exists()) {
+      return;
+    }
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), ENCODING));
+    try {
+      String line = reader.readLine();
+      if (line == null || !line.equals(SOURCE + source)) {
+        // another job with same hash
+        return;
+      }
+      while ((line = reader.readLine()) != null) {
+        if (line.startsWith(LAST)) {
+          last = Integer.parseInt(StringUtils.substringAfter(line, LAST));
+        } else if (line.startsWith(SINCE)) {
+          since = Long.parseLong(StringUtils.substringAfter(line, SINCE));
+        } else if (line.startsWith(STREAK)) {
+          String streak = StringUtils.substringAfter(line, STREAK);
+          failing = StringUtils.isNotEmpty(streak);
+          if (failing) {
+            firstFailedNumber = Integer.parseInt(StringUtils.substringBefore(streak, ","));
+            firstFailedTimestamp = Long.parseLong(StringUtils.substringAfter(streak, ","));
+          }
+        } else if (line.startsWith(DAY_PREFIX)) {
+          String day = StringUtils.substringBefore(StringUtils.substringAfter(line, DAY_PREFIX), " ");
+          days.put(Long.parseLong(day), BuildStatistics.fromString(StringUtils.substringAfter(line, " ")));
+        }
+      }
+    } catch (RuntimeException e) {
+      clear();
+      throw new IOException("Unable to read " + file + ": " + e.getMessage());
+    } finally {
+      IOUtils.closeQuietly(reader);
+    }
+  }
+
+  public void save() throws IOException {
+    if (file == null) {
+      return;
+    }
+    File directory = file.getParentFile();
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create directory " + directory);
+    }
+    // Unique name, as several analyses may save the same job at once
+    File tmp = File.createTempFile(file.getName(), ".tmp", directory);
+    Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), ENCODING));
+    try {
+      writer.write(SOURCE + source + "\n");
+      writer.write(LAST + last + "\n");
+      writer.write(SINCE + since + "\n");
+      writer.write(STREAK + (failing ? firstFailedNumber + "," + firstFailedTimestamp : "") + "\n");
+      for (Map.Entry<Long, BuildStatistics> entry : days.entrySet()) {
+        writer.write(DAY_PREFIX + entry.getKey() + " " + entry.getValue().convertToString() + "\n");
+      }
+      writer.close();
+    } catch (IOException e) {
+      tmp.delete();
+      throw e;
+    } finally {
+      IOUtils.closeQuietly(writer);
+    }
+    if (file.exists() && !file.delete() || !tmp.renameTo(file)) {
+      tmp.delete();
+      throw new IOException("Unable to write " + file);
+    }
+  }
+
+  private void clear() {
+    days.clear();
+    last = 0;
+    since = Long.MIN_VALUE;
+    failing = false;
+  }
+}
@@ -68,15 +68,51 @@ public abstract class AbstractServer {
     this.key = key;
   }
 
+  public abstract String getSystem();
+
   protected abstract String getBuildUrl(String number);
 
   protected abstract String getLastBuildUrl();
 
   protected abstract Unmarshaller getBuildUnmarshaller();
 
-  protected void doLogin(HttpClient client) throws IOException {
-    if (!StringUtils.isBlank(getUsername()) && !StringUtils.isBlank(getPassword())) {
+  /**
+   * Returns URL of a page of builds, newest first, or null if server doesn't support bulk retrieval.
+   *
+   * @param start index of first build in page
+   * @param count maximum number of builds in page
+   */
+  protected String getBuildListUrl(int start, int count) {
+    return null;
+  }
+
+  /**
+   * Returns name of elements, which hold builds in response from {@link #getBuildListUrl(int, int)}.
+   */
+  protected String getBuildListElement() {
+    return null;
+  }
+
+  public boolean hasCredentials() {
+    return !StringUtils.isBlank(getUsername()) && !StringUtils.isBlank(getPassword());
+  }
+
+  /**
+   * Configures given client. Unlike login, this is done for each client, because state of client
+   * is shared with other clients of the same server, but parameters are not.
+   */
+  protected void configure(HttpClient client) {
+    if (hasCredentials()) {
       client.getParams().setAuthenticationPreemptive(true);
+    }
+  }
+
+  /**
+   * Logs in to server, so state of given client allows further requests.
+   * Repeated, when server rejects request with status 401 or 403.
+   */
+  protected void doLogin(HttpClient client) throws IOException {
+    if (hasCredentials()) {
       Credentials defaultcreds = new UsernamePasswordCredentials(getUsername(), getPassword());
       client.getState().setCredentials(AuthScope.ANY, defaultcreds);
     }
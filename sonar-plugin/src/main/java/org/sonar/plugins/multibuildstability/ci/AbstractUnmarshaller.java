@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability.ci;
+
+import org.dom4j.Element;
+import org.sonar.plugins.multibuildstability.Build;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Base for unmarshallers, which need only few attributes and text of child elements of build element.
+ * All other content is skipped.
+ */
+public abstract class AbstractUnmarshaller implements Unmarshaller, StreamingUnmarshaller {
+  /**
+   * @return names of attributes and child elements required by {@link #toBuild(Map)}
+   */
+  protected abstract Set<String> getFields();
+
+  /**
+   * @return build, or null if it can't be used, so it's skipped
+   */
+  protected abstract Build toBuild(Map<String, String> fields);
+
+  public Build toModel(Element domElement) {
+    Map<String, String> fields = new HashMap<String, String>();
+    for (String field : getFields()) {
+      String value = domElement.attributeValue(field);
+      if (value == null) {
+        value = domElement.elementText(field);
+      }
+      if (value != null) {
+        fields.put(field, value);
+      }
+    }
+    return toBuild(fields);
+  }
+
+  public List<Build> toModels(XMLStreamReader reader, String element) throws XMLStreamException {
+    List<Build> builds = new ArrayList<Build>();
+    while (reader.hasNext()) {
+      if (reader.next() == XMLStreamConstants.START_ELEMENT && (element == null || element.equals(reader.getLocalName()))) {
+        Build build = readBuild(reader);
+        if (build != null) {
+          builds.add(build);
+        }
+        if (element == null) {
+          break;
+        }
+      }
+    }
+    return builds;
+  }
+
+  /**
+   * Reads build element, on which reader positioned, up to its end.
+   */
+  private Build readBuild(XMLStreamReader reader) throws XMLStreamException {
+    Set<String> names = getFields();
+    Map<String, String> fields = new HashMap<String, String>();
+    for (int i = 0; i < reader.getAttributeCount(); i++) {
+      String name = reader.getAttributeLocalName(i);
+      if (names.contains(name)) {
+        fields.put(name, reader.getAttributeValue(i));
+      }
+    }
+    int depth = 1;
+    while (depth > 0) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        if (depth == 1 && names.contains(reader.getLocalName())) {
+          // moves reader to end of this element
+          fields.put(reader.getLocalName(), reader.getElementText());
+        } else {
+          depth++;
+        }
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+    }
+    return toBuild(fields);
+  }
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability.ci;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.sonar.plugins.multibuildstability.Build;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Local copy of finished builds of one CI job, so only new builds should be retrieved from server.
+ * Builds are stored in format of {@link #formatBuild(Build)}, one per line.
+ */
+public class BuildCache {
+  /**
+   * Version of file format, files of other versions are ignored. Version 2 keeps durations in milliseconds.
+   */
+  static final int VERSION = 2;
+
+  private static final String ENCODING = "UTF-8";
+  private static final String SOURCE = "source=";
+  private static final String VERSION_KEY = "version=";
+  private static final String NEWEST = "newest=";
+  private static final String EXHAUSTED = "exhausted=";
+  private static final String RUNNING = "running=";
+  private static final String MISSING = "missing=";
+
+  private final File file;
+  private final String source;
+
+  private final TreeMap<Integer, Build> builds = new TreeMap<Integer, Build>();
+
+  /**
+   * Numbers of builds, which were in progress, when they were retrieved.
+   */
+  private final SortedSet<Integer> running = new TreeSet<Integer>();
+
+  /**
+   * Numbers of builds, which don't exist on server.
+   */
+  private final SortedSet<Integer> missing = new TreeSet<Integer>();
+
+  /**
+   * Highest build number ever retrieved.
+   */
+  private int newest;
+
+  /**
+   * True, if there is nothing to retrieve below oldest cached build.
+   */
+  private boolean exhausted;
+
+  public BuildCache(File directory, CiConfiguration config) {
+    this.source = config.getSource();
+    this.file = new File(directory, "builds-" + Integer.toHexString(source.hashCode()) + ".txt");
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  public int getNewest() {
+    return newest;
+  }
+
+  public boolean isExhausted() {
+    return exhausted;
+  }
+
+  public void setExhausted(boolean exhausted) {
+    this.exhausted = exhausted;
+  }
+
+  public Collection<Integer> getRunning() {
+    return new ArrayList<Integer>(running);
+  }
+
+  /**
+   * @return numbers of builds known to be missing on server, modifications are saved
+   */
+  public SortedSet<Integer> getMissing() {
+    return missing;
+  }
+
+  /**
+   * @return oldest cached build or null, if there is no builds
+   */
+  public Build getOldest() {
+    return builds.isEmpty() ? null : builds.firstEntry().getValue();
+  }
+
+  /**
+   * Adds retrieved builds. Builds in progress aren't stored, only their numbers to retrieve them again.
+   */
+  public void update(Collection<Build> retrieved) {
+    for (Build build : retrieved) {
+      newest = Math.max(newest, build.getNumber());
+      if (build.isBuilding()) {
+        running.add(build.getNumber());
+      } else {
+        running.remove(build.getNumber());
+        builds.put(build.getNumber(), build);
+      }
+    }
+  }
+
+  /**
+   * Forgets build, which is not available on server anymore.
+   */
+  public void remove(int number) {
+    running.remove(number);
+    builds.remove(number);
+  }
+
+  /**
+   * Returns builds since given date, newest first. Like {@link CiConnector#getBuildsSince(Date)} includes first build before this date.
+   */
+  public List<Build> getBuildsSince(Date date) {
+    List<Build> result = new ArrayList<Build>();
+    for (Build build : builds.descendingMap().values()) {
+      result.add(build);
+      if (!date.before(build.getDate())) {
+        break;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Drops builds, which are not required for analysis since given date.
+   */
+  public void prune(Date date) {
+    Integer first = null;
+    for (Build build : builds.descendingMap().values()) {
+      if (!date.before(build.getDate())) {
+        first = build.getNumber();
+        break;
+      }
+    }
+    if (first != null && !builds.headMap(first).isEmpty()) {
+      builds.headMap(first).clear();
+      exhausted = false;
+    }
+    if (first != null) {
+      missing.headSet(first).clear();
+    }
+  }
+
+  public void load() throws IOException {
+    clear();
+    if (!file.exists()) {
+      return;
+    }
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), ENCODING));
+    try {
+      String line = reader.readLine();
+      if (line == null || !line.equals(SOURCE + source)) {
+        // another job with same hash
+        return;
+      }
+      line = reader.readLine();
+      if (line == null || !line.equals(VERSION_KEY + VERSION)) {
+        // written by older version, so builds are retrieved again
+        return;
+      }
+      while ((line = reader.readLine()) != null) {
+        if (line.startsWith(NEWEST)) {
+          newest = Integer.parseInt(StringUtils.substringAfter(line, NEWEST));
+        } else if (line.startsWith(EXHAUSTED)) {
+          exhausted = Boolean.parseBoolean(StringUtils.substringAfter(line, EXHAUSTED));
+        } else if (line.startsWith(RUNNING)) {
+          for (String number : StringUtils.split(StringUtils.substringAfter(line, RUNNING), ',')) {
+            running.add(Integer.parseInt(number));
+          }
+        } else if (line.startsWith(MISSING)) {
+          parseRanges(StringUtils.substringAfter(line, MISSING), missing);
+        } else if (StringUtils.isNotBlank(line)) {
+          Build build = parseBuild(line);
+          builds.put(build.getNumber(), build);
+        }
+      }
+    } catch (RuntimeException e) {
+      clear();
+      throw new IOException("Unable to read " + file + ": " + e.getMessage());
+    } finally {
+      IOUtils.closeQuietly(reader);
+    }
+  }
+
+  public void save() throws IOException {
+    File directory = file.getParentFile();
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create directory " + directory);
+    }
+    // Unique name, as several analyses may save the same job at once
+    File tmp = File.createTempFile(file.getName(), ".tmp", directory);
+    Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), ENCODING));
+    try {
+      writer.write(SOURCE + source + "\n");
+      writer.write(VERSION_KEY + VERSION + "\n");
+      writer.write(NEWEST + newest + "\n");
+      writer.write(EXHAUSTED + exhausted + "\n");
+      writer.write(RUNNING + StringUtils.join(running, ',') + "\n");
+      writer.write(MISSING + formatRanges(missing) + "\n");
+      for (Build build : builds.values()) {
+        writer.write(formatBuild(build));
+        writer.write('\n');
+      }
+      writer.close();
+    } catch (IOException e) {
+      tmp.delete();
+      throw e;
+    } finally {
+      IOUtils.closeQuietly(writer);
+    }
+    if (file.exists() && !file.delete() || !tmp.renameTo(file)) {
+      tmp.delete();
+      throw new IOException("Unable to write " + file);
+    }
+  }
+
+  /**
+   * Formats finished build as "number;timestamp;duration in milliseconds;result". Unlike {@link Build#convertToString()}
+   * duration isn't truncated to seconds, so cached builds give the same measures as retrieved ones.
+   */
+  static String formatBuild(Build build) {
+    return new StringBuilder()
+        .append(build.getNumber()).append(';')
+        .append(build.getTimestamp()).append(';')
+        .append(Math.round(build.getDuration())).append(';')
+        .append(build.isSuccessful() ? Build.SUCCESSFUL_STATUS : Build.FAILED_STATUS)
+        .toString();
+  }
+
+  static Build parseBuild(String line) {
+    String[] fields = StringUtils.split(line, ';');
+    if (fields.length != 4) {
+      throw new IllegalArgumentException("Incorrect build: " + line);
+    }
+    boolean successful = Build.SUCCESSFUL_STATUS.equals(fields[3]);
+    return new Build(Integer.parseInt(fields[0]), Long.parseLong(fields[1]), fields[3], successful, Long.parseLong(fields[2]));
+  }
+
+  /**
+   * Formats numbers as comma-separated ranges, e.g. "1-5,8".
+   */
+  static String formatRanges(SortedSet<Integer> numbers) {
+    StringBuilder sb = new StringBuilder();
+    Integer start = null;
+    Integer end = null;
+    for (Integer number : numbers) {
+      if (end != null && number == end + 1) {
+        end = number;
+        continue;
+      }
+      appendRange(sb, start, end);
+      start = number;
+      end = number;
+    }
+    appendRange(sb, start, end);
+    return sb.toString();
+  }
+
+  private static void appendRange(StringBuilder sb, Integer start, Integer end) {
+    if (start == null) {
+      return;
+    }
+    if (sb.length() > 0) {
+      sb.append(',');
+    }
+    sb.append(start);
+    if (!start.equals(end)) {
+      sb.append('-').append(end);
+    }
+  }
+
+  static void parseRanges(String ranges, SortedSet<Integer> numbers) {
+    for (String range : StringUtils.split(ranges, ',')) {
+      int start = Integer.parseInt(StringUtils.substringBefore(range, "-"));
+      int end = range.indexOf('-') < 0 ? start : Integer.parseInt(StringUtils.substringAfter(range, "-"));
+      for (int number = start; number <= end; number++) {
+        numbers.add(number);
+      }
+    }
+  }
+
+  /**
+   * Forgets all builds, e.g. when numbers of builds start again from 1, because job was recreated.
+   */
+  public void clear() {
+    builds.clear();
+    running.clear();
+    missing.clear();
+    newest = 0;
+    exhausted = false;
+  }
+}
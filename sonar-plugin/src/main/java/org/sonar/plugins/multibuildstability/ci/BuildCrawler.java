@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability.ci;
+
+import org.sonar.api.utils.SonarException;
+import org.sonar.plugins.multibuildstability.Build;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Retrieves builds one by one, going down from given number, optionally with several requests in flight.
+ * <p>
+ * Numbers of builds, which don't exist (e.g. deleted by log rotation), are remembered. Only numbers, which were
+ * requested and not found, are remembered, because retention of CI servers may keep every Nth build or builds
+ * after a purge, so a gap isn't necessarily contiguous. After few consecutive missing builds existing one is
+ * searched below with exponentially growing steps. If one is found, crawl continues through the gap one by one,
+ * however long it is, so no build is skipped. Otherwise crawl stops after {@code maxMisses} missing builds.
+ * </p>
+ */
+public class BuildCrawler {
+  /**
+   * Number of consecutive missing builds, after which galloping starts.
+   */
+  private static final int GALLOP_AFTER = 3;
+
+  private final CiConnector connector;
+  private final int concurrency;
+  private final int maxMisses;
+  private final SortedSet<Integer> missing;
+
+  /**
+   * @param maxMisses maximum number of missing builds probed while searching for next existing build
+   * @param missing   numbers of builds known to be missing, updated by crawler
+   */
+  public BuildCrawler(CiConnector connector, int concurrency, int maxMisses, SortedSet<Integer> missing) {
+    this.connector = connector;
+    this.concurrency = Math.max(1, concurrency);
+    this.maxMisses = Math.max(1, maxMisses);
+    this.missing = missing;
+  }
+
+  /**
+   * Adds to given list builds with numbers between given bounds (exclusive), newest first,
+   * until first build before given date, which is also added, or until deadline of connector expired.
+   */
+  public List<Build> crawl(List<Build> builds, Date date, int below, int above) throws IOException {
+    ExecutorService executor = concurrency > 1 ? Executors.newFixedThreadPool(concurrency) : null;
+    LinkedList<Future<Build>> pending = new LinkedList<Future<Build>>();
+    LinkedList<Integer> pendingNumbers = new LinkedList<Integer>();
+    // builds found by galloping, which are reached later
+    Map<Integer, Build> found = new HashMap<Integer, Build>();
+    try {
+      int next = below;
+      int misses = 0;
+      while (true) {
+        while (pending.size() < concurrency && (next = nextCandidate(next, above)) > above) {
+          pending.add(submit(executor, next, found.get(next)));
+          pendingNumbers.add(next);
+        }
+        if (pending.isEmpty()) {
+          break;
+        }
+        int number = pendingNumbers.removeFirst();
+        Build build = getResult(pending.removeFirst());
+        if (build != null) {
+          found.remove(number);
+          misses = 0;
+          builds.add(build);
+          if (!date.before(build.getDate())) {
+            break;
+          }
+          continue;
+        }
+        missing.add(number);
+        misses++;
+        if (found.isEmpty() && misses == GALLOP_AFTER) {
+          // gallops below requests in flight, probes count as misses of this gap
+          int known = missing.size();
+          Build existing = gallop(Math.min(next, number), above, maxMisses - misses);
+          misses += missing.size() - known;
+          if (existing != null) {
+            found.put(existing.getNumber(), existing);
+          }
+        }
+        if (found.isEmpty() && misses >= maxMisses) {
+          break;
+        }
+      }
+    } catch (DeadlineExceededException e) {
+      // builds retrieved so far are returned, connector knows that they are partial
+    } finally {
+      cancel(pending);
+      if (executor != null) {
+        executor.shutdownNow();
+      }
+    }
+    return builds;
+  }
+
+  /**
+   * @return highest number below given, which isn't known as missing
+   */
+  private int nextCandidate(int number, int above) {
+    do {
+      number--;
+    } while (number > above && missing.contains(number));
+    return number;
+  }
+
+  /**
+   * Searches for existing build below given number with exponentially growing steps.
+   *
+   * @param probes maximum number of requests
+   * @return found build or null
+   */
+  private Build gallop(int from, int above, int probes) throws IOException {
+    int lowest = Math.max(above + 1, 1);
+    int step = 1;
+    for (int i = 0; i < probes; i++) {
+      step *= 2;
+      int probe = Math.max(from - step, lowest);
+      if (probe >= from) {
+        return null;
+      }
+      Build build = getBuild(probe);
+      if (build != null) {
+        return build;
+      }
+      if (probe == lowest) {
+        return null;
+      }
+    }
+    return null;
+  }
+
+  private Build getBuild(int number) throws IOException {
+    if (missing.contains(number)) {
+      return null;
+    }
+    Build build = connector.getBuild(number);
+    if (build == null) {
+      missing.add(number);
+    }
+    return build;
+  }
+
+  /**
+   * @param build already retrieved build with given number, or null
+   */
+  private Future<Build> submit(ExecutorService executor, final int number, final Build build) {
+    FutureTask<Build> task = new FutureTask<Build>(new Callable<Build>() {
+      public Build call() throws IOException {
+        return build != null ? build : connector.getBuild(number);
+      }
+    });
+    if (executor == null || build != null) {
+      task.run();
+    } else {
+      executor.execute(task);
+    }
+    return task;
+  }
+
+  private static void cancel(List<Future<Build>> pending) {
+    for (Future<Build> future : pending) {
+      future.cancel(true);
+    }
+    pending.clear();
+  }
+
+  private static <T> T getResult(Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while retrieving builds");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new SonarException(e.getCause());
+    }
+  }
+}
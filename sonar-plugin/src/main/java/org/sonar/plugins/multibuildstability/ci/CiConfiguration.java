@@ -29,6 +29,13 @@ public class CiConfiguration {
         return this.url;
     }
 
+    /**
+     * Identifies the job in files kept between analyses, so all of them belong to the same job.
+     */
+    public String getSource() {
+        return system + "|" + url;
+    }
+
     @Override
     public String toString() {
         String result = system + ":" + url;
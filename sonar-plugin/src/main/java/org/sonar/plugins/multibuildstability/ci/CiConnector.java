@@ -16,50 +16,234 @@
 
 package org.sonar.plugins.multibuildstability.ci;
 
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
+import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpConnectionManager;
 import org.apache.commons.httpclient.methods.GetMethod;
-import org.dom4j.Document;
+import org.apache.commons.io.IOUtils;
 import org.dom4j.DocumentException;
+import org.dom4j.Element;
 import org.dom4j.io.SAXReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.sonar.api.utils.SonarException;
 import org.sonar.plugins.multibuildstability.Build;
+import org.sonar.plugins.multibuildstability.BuildHistory;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 /**
  * @author Evgeny Mandrikov
  */
 public class CiConnector {
+  private static final Logger LOG = LoggerFactory.getLogger(CiConnector.class);
+
   private static final int TIMEOUT = 30 * 1000;
 
+  public static final int DEFAULT_PAGE_SIZE = 100;
+  public static final int DEFAULT_MAX_MISSES = 30;
+  public static final int DEFAULT_RETRIES = 2;
+  public static final long DEFAULT_RETRY_DELAY = 500;
+
+  private static final String ACCEPT_ENCODING = "gzip, deflate";
+
+  private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+  static {
+    XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+    XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+  }
+
   private HttpClient client;
   private AbstractServer server;
 
-  protected CiConnector(AbstractServer server) {
+  /**
+   * Maximum number of builds retrieved simultaneously, when server doesn't support bulk retrieval.
+   */
+  private int concurrency = 1;
+
+  /**
+   * Number of builds requested at once in bulk mode.
+   */
+  private int pageSize = DEFAULT_PAGE_SIZE;
+
+  /**
+   * Set to true, when server rejected bulk retrieval.
+   */
+  private volatile boolean bulkUnsupported;
+
+  /**
+   * Maximum number of missing builds probed while searching for next existing build.
+   */
+  private int maxMisses = DEFAULT_MAX_MISSES;
+
+  /**
+   * Number of newest build on server seen by last {@link #fetchBuilds(Date, int, int)}, or 0 if none.
+   */
+  private int newestOnServer;
+
+  /**
+   * Numbers of builds known to be missing on server.
+   */
+  private SortedSet<Integer> missing = new TreeSet<Integer>();
+
+  private BuildCache cache;
+  private ResponseCache responseCache;
+
+  /**
+   * Number of times failed request is repeated, with random delay up to {@link #retryDelay} doubled after each attempt.
+   */
+  private int retries = DEFAULT_RETRIES;
+  private long retryDelay = DEFAULT_RETRY_DELAY;
+  private final Random random = new Random();
+
+  private CircuitBreaker circuitBreaker;
+
+  private Deadline deadline = Deadline.NONE;
+
+  /**
+   * Login state, own for each connector, unless shared with {@link #setSession(Session)}.
+   */
+  private Session session;
+
+  /**
+   * Set to true, when retrieval was stopped by {@link #deadline}, so not all builds were retrieved.
+   */
+  private volatile boolean partial;
+
+  /**
+   * @param connectionManager should be thread-safe, if {@link #setConcurrency(int)} used
+   */
+  protected CiConnector(AbstractServer server, HttpConnectionManager connectionManager) {
     this.server = server;
-    client = new HttpClient();
+    client = new HttpClient(connectionManager);
     client.getParams().setSoTimeout(TIMEOUT);
+    setSession(new Session());
+  }
+
+  public int getConcurrency() {
+    return concurrency;
+  }
+
+  /**
+   * Actual number of simultaneous requests is also limited by connection manager.
+   */
+  public void setConcurrency(int concurrency) {
+    this.concurrency = Math.max(1, concurrency);
+  }
+
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  public void setPageSize(int pageSize) {
+    this.pageSize = Math.max(1, pageSize);
+  }
+
+  public int getMaxMisses() {
+    return maxMisses;
+  }
+
+  public void setMaxMisses(int maxMisses) {
+    this.maxMisses = Math.max(1, maxMisses);
+  }
+
+  public int getRetries() {
+    return retries;
+  }
+
+  /**
+   * @param retries    number of times failed request is repeated
+   * @param retryDelay initial maximum delay before repeated request in milliseconds
+   */
+  public void setRetries(int retries, long retryDelay) {
+    this.retries = Math.max(0, retries);
+    this.retryDelay = Math.max(0, retryDelay);
+  }
+
+  /**
+   * @param circuitBreaker state of server shared with other connectors or null
+   */
+  public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+    this.circuitBreaker = circuitBreaker;
+  }
+
+  public Deadline getDeadline() {
+    return deadline;
+  }
+
+  /**
+   * After given deadline no requests are made, and builds retrieved so far are returned as {@link #isPartial() partial}.
+   */
+  public void setDeadline(Deadline deadline) {
+    this.deadline = deadline == null ? Deadline.NONE : deadline;
+    // parameters of client are shared by all requests of this connector, so they are set once here
+    // and requests don't wait for free connection after deadline
+    client.getParams().setConnectionManagerTimeout(this.deadline == Deadline.NONE ? 0 : Math.max(1, this.deadline.remaining()));
+  }
+
+  /**
+   * @return true, if last retrieval was stopped by deadline
+   */
+  public boolean isPartial() {
+    return partial;
+  }
+
+  /**
+   * @param session login state shared with other connectors of the same server
+   */
+  public void setSession(Session session) {
+    this.session = session;
+    client.setState(session.getState());
+  }
+
+  /**
+   * Enables local cache of finished builds in given directory, so only new builds are retrieved,
+   * and cache of responses, so requests repeated by each analysis are conditional.
+   *
+   * @param config configuration of this connector, which identifies cached builds and responses
+   */
+  public void setCacheDirectory(File directory, CiConfiguration config) {
+    cache = directory == null ? null : new BuildCache(directory, config);
+    responseCache = directory == null ? null : new ResponseCache(directory, config);
   }
 
   protected Build getLastBuild() throws IOException {
-    Document dom = executeGetMethod(server.getLastBuildUrl());
-    if (dom == null) {
-      return null;
-    }
-    return server.getBuildUnmarshaller().toModel(dom.getRootElement());
+    return single(executeGetMethod(server.getLastBuildUrl(), null), server.getLastBuildUrl());
   }
 
   protected Build getBuild(String number) throws IOException {
-    Document dom = executeGetMethod(server.getBuildUrl(number));
-    if (dom == null) {
-      return null;
+    return single(executeGetMethod(server.getBuildUrl(number), null), server.getBuildUrl(number));
+  }
+
+  /**
+   * @return build from response for one build, or null if build doesn't exist
+   * @throws IOException if build exists, but was skipped by unmarshaller, so it isn't taken for missing
+   */
+  private static Build single(List<Build> builds, String url) throws IOException {
+    if (builds != null && builds.isEmpty()) {
+      throw new IOException("Unable to read build from " + url);
     }
-    return server.getBuildUnmarshaller().toModel(dom.getRootElement());
+    return builds == null ? null : builds.get(0);
   }
 
   protected Build getBuild(int number) throws IOException {
@@ -67,7 +251,7 @@ public class CiConnector {
   }
 
   public List<Build> getBuilds(int count) throws IOException {
-    server.doLogin(client);
+    login();
     List<Build> builds = new ArrayList<Build>();
     Build last = getLastBuild();
     builds.add(last);
@@ -77,56 +261,442 @@ public class CiConnector {
     return builds;
   }
 
+  /**
+   * Returns builds since given date and first build before this date, newest first.
+   */
   public List<Build> getBuildsSince(Date date) throws IOException {
-    server.doLogin(client);
-    List<Build> builds = new ArrayList<Build>();
-    Build current = getLastBuild();
-    builds.add(current);
-    Build last = current;
-    int number = last.getNumber();
-    while (date.before(last.getDate()) && number > 0) {
-      number--;
-      current = getBuild(number);
-      if (current != null) {
-        builds.add(current);
-        last = current;
+    partial = false;
+    login();
+    if (cache == null) {
+      return fetchBuilds(date, Integer.MAX_VALUE, 0);
+    }
+    try {
+      cache.load();
+    } catch (IOException e) {
+      LOG.warn("Ignoring cache of builds: {}", e.getMessage());
+    }
+    try {
+      responseCache.load();
+    } catch (IOException e) {
+      LOG.warn("Ignoring cache of responses: {}", e.getMessage());
+    }
+    try {
+      return getCachedBuildsSince(date);
+    } finally {
+      // saved also after partial retrieval, so validators of responses received so far aren't lost
+      try {
+        responseCache.save();
+      } catch (IOException e) {
+        LOG.warn("Unable to save cache of responses: {}", e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Retrieves builds, which aren't in {@link #cache}, and updates it, unless retrieval is partial.
+   */
+  private List<Build> getCachedBuildsSince(Date date) throws IOException {
+    missing = cache.getMissing();
+    boolean empty = cache.getNewest() == 0;
+    List<Build> retrieved = fetchPartially(date, Integer.MAX_VALUE, cache.getNewest());
+    if (!empty && newestOnServer > 0 && newestOnServer < cache.getNewest()) {
+      LOG.info("Numbers of builds of {} were reset, ignoring cached builds", server.getKey());
+      cache.clear();
+      empty = true;
+      retrieved = fetchPartially(date, Integer.MAX_VALUE, 0);
+    }
+    if (partial && !empty) {
+      // builds between retrieved and cached ones are unknown, so cache is kept as is for next analysis
+      List<Build> builds = new ArrayList<Build>(retrieved);
+      builds.addAll(cache.getBuildsSince(date));
+      return builds;
+    }
+    if (empty) {
+      // retrieval stopped by deadline doesn't mean that there are no older builds
+      cache.setExhausted(!partial && !reachedDate(retrieved, date));
+    }
+    try {
+      for (int number : cache.getRunning()) {
+        Build build = getBuild(number);
+        if (build == null) {
+          cache.remove(number);
+          missing.add(number);
+        } else {
+          retrieved.add(build);
+        }
+      }
+    } catch (DeadlineExceededException e) {
+      // remaining running builds are refreshed by next analysis
+    }
+    cache.update(retrieved);
+
+    Build oldest = cache.getOldest();
+    if (!empty && !cache.isExhausted() && oldest != null && date.before(oldest.getDate())) {
+      // Analysed period became longer since previous analysis
+      List<Build> older = fetchPartially(date, oldest.getNumber(), 0);
+      cache.setExhausted(!partial && !reachedDate(older, date));
+      cache.update(older);
+    }
+    cache.prune(date);
+    try {
+      cache.save();
+    } catch (IOException e) {
+      LOG.warn("Unable to save cache of builds: {}", e.getMessage());
+    }
+
+    List<Build> builds = cache.getBuildsSince(date);
+    for (Build build : retrieved) {
+      if (build.isBuilding()) {
+        builds.add(build);
       }
     }
     return builds;
   }
 
-  protected Document executeGetMethod(String url) throws IOException {
-    return executeMethod(new GetMethod(url));
+  private void login() throws IOException {
+    server.configure(client);
+    session.login(server, client);
+  }
+
+  /**
+   * Same builds as {@link #getBuildsSince(Date)}, but in compact form, which is kept for analysis.
+   */
+  public BuildHistory getBuildHistorySince(Date date) throws IOException {
+    return BuildHistory.of(getBuildsSince(date));
+  }
+
+  /**
+   * Same as {@link #fetchBuilds(Date, int, int)}, but returns no builds instead of failing, when deadline expired.
+   */
+  private List<Build> fetchPartially(Date date, int below, int above) throws IOException {
+    try {
+      return fetchBuilds(date, below, above);
+    } catch (DeadlineExceededException e) {
+      return new ArrayList<Build>();
+    }
+  }
+
+  private static boolean reachedDate(List<Build> builds, Date date) {
+    return !builds.isEmpty() && !date.before(builds.get(builds.size() - 1).getDate());
+  }
+
+  /**
+   * Retrieves builds with numbers between given bounds (exclusive), newest first,
+   * until first build before given date, which is included into result.
+   */
+  protected List<Build> fetchBuilds(Date date, int below, int above) throws IOException {
+    newestOnServer = 0;
+    if (!bulkUnsupported && server.getBuildListUrl(0, pageSize) != null) {
+      try {
+        List<Build> builds = getBuildList(date, below, above);
+        if (builds != null) {
+          return builds;
+        }
+        LOG.info("No builds in bulk response from {}, fetching build by build", server.getHost());
+      } catch (DeadlineExceededException e) {
+        throw e;
+      } catch (IOException e) {
+        LOG.info("Bulk retrieval of builds rejected by {}, fetching build by build: {}", server.getHost(), e.getMessage());
+      }
+      bulkUnsupported = true;
+    }
+    List<Build> builds = new ArrayList<Build>();
+    Build last = getLastBuild();
+    if (last == null) {
+      return builds;
+    }
+    newestOnServer = last.getNumber();
+    int number = Math.min(below, last.getNumber() + 1);
+    if (last.getNumber() < below) {
+      if (last.getNumber() <= above) {
+        return builds;
+      }
+      builds.add(last);
+      if (!date.before(last.getDate())) {
+        return builds;
+      }
+    }
+    return new BuildCrawler(this, concurrency, maxMisses, missing).crawl(builds, date, number, above);
+  }
+
+  /**
+   * Retrieves builds page by page, newest first, with same bounds as {@link #fetchBuilds(Date, int, int)}.
+   *
+   * @return builds or null, if server returned nothing, so bulk mode can't be used
+   */
+  protected List<Build> getBuildList(Date date, int below, int above) throws IOException {
+    List<Build> builds = new ArrayList<Build>();
+    int lowest = Integer.MAX_VALUE;
+    for (int start = 0; ; start += pageSize) {
+      List<Build> page;
+      try {
+        page = executeGetMethod(server.getBuildListUrl(start, pageSize), server.getBuildListElement());
+      } catch (DeadlineExceededException e) {
+        if (start == 0) {
+          throw e;
+        }
+        return builds;
+      }
+      if (page == null) {
+        return start == 0 ? null : builds;
+      }
+      if (start == 0 && page.isEmpty()) {
+        return null;
+      }
+      boolean progress = false;
+      for (Build build : page) {
+        if (build.getNumber() >= lowest) {
+          // server ignored requested range
+          continue;
+        }
+        lowest = build.getNumber();
+        progress = true;
+        newestOnServer = Math.max(newestOnServer, build.getNumber());
+        if (build.getNumber() <= above) {
+          return builds;
+        }
+        if (build.getNumber() < below) {
+          builds.add(build);
+          if (!date.before(build.getDate())) {
+            return builds;
+          }
+        }
+      }
+      if (!progress || page.size() < pageSize) {
+        return builds;
+      }
+    }
+  }
+
+  /**
+   * @param element name of elements, which hold builds, or null if whole response is one build
+   * @return builds or null, if nothing found
+   */
+  protected List<Build> executeGetMethod(String url, String element) throws IOException {
+    GetMethod method = new GetMethod(url);
+    try {
+      // only responses for one build are cached, listings may be large, so they are parsed while received
+      InputStream response = executeMethod(method, element == null);
+      if (response == null) {
+        return null;
+      }
+      try {
+        return unmarshal(response, element);
+      } finally {
+        // also releases decompressor
+        IOUtils.closeQuietly(response);
+      }
+    } finally {
+      method.releaseConnection();
+    }
+  }
+
+  /**
+   * Response is parsed while it's received. Encoding is detected by parser from XML declaration.
+   */
+  private List<Build> unmarshal(InputStream response, String element) throws IOException {
+    Unmarshaller unmarshaller = server.getBuildUnmarshaller();
+    if (unmarshaller instanceof StreamingUnmarshaller) {
+      XMLStreamReader reader = null;
+      try {
+        reader = XML_INPUT_FACTORY.createXMLStreamReader(response);
+        return ((StreamingUnmarshaller) unmarshaller).toModels(reader, element);
+      } catch (XMLStreamException e) {
+        throw new SonarException(e);
+      } finally {
+        close(reader);
+      }
+    }
+    try {
+      Element root = new SAXReader().read(response).getRootElement();
+      List<Build> builds = new ArrayList<Build>();
+      if (element == null) {
+        add(builds, unmarshaller.toModel(root));
+      } else {
+        for (Object child : root.elements(element)) {
+          add(builds, unmarshaller.toModel((Element) child));
+        }
+      }
+      return builds;
+    } catch (DocumentException e) {
+      throw new SonarException(e);
+    }
+  }
+
+  private static void add(List<Build> builds, Build build) {
+    if (build != null) {
+      builds.add(build);
+    }
+  }
+
+  private static void close(XMLStreamReader reader) {
+    if (reader != null) {
+      try {
+        reader.close();
+      } catch (XMLStreamException ignored) {
+        // ignore
+      }
+    }
   }
 
-  protected Document executeMethod(GetMethod method) throws IOException {
-    client.executeMethod(method);
+  /**
+   * Request is conditional, if response for the same URL is cached, and unchanged response is taken from cache.
+   *
+   * @param cacheable true, if response is small enough to be kept in memory and in {@link #responseCache}
+   * @return response body or null, if nothing found
+   */
+  protected InputStream executeMethod(GetMethod method, boolean cacheable) throws IOException {
+    String url = responseCache == null || !cacheable ? null : method.getURI().toString();
+    ResponseCache.Entry cached = url == null ? null : responseCache.get(url);
+    if (cached != null) {
+      if (cached.getETag() != null) {
+        method.setRequestHeader("If-None-Match", cached.getETag());
+      }
+      if (cached.getLastModified() != null) {
+        method.setRequestHeader("If-Modified-Since", cached.getLastModified());
+      }
+    }
+    method.setRequestHeader("Accept-Encoding", ACCEPT_ENCODING);
+    int login = session.getLogins();
+    execute(method);
+    int status = method.getStatusCode();
+    if ((status == 401 || status == 403) && server.hasCredentials()) {
+      // session expired, so request is repeated once after new login
+      LOG.debug("Logging in again to {} after status code {}", server.getHost(), status);
+      method.releaseConnection();
+      session.relogin(server, client, login);
+      execute(method);
+    }
+    if (cached != null && method.getStatusCode() == 304) {
+      return new ByteArrayInputStream(cached.getBody());
+    }
     if (method.getStatusCode() == 404) {
+      if (url != null) {
+        responseCache.remove(url);
+      }
       return null;
     }
     if (method.getStatusCode() != 200) {
       throw new IOException("Unexpected status code: " + method.getStatusCode());
     }
+    Header etag = method.getResponseHeader("ETag");
+    Header lastModified = method.getResponseHeader("Last-Modified");
+    if (url != null && (etag != null || lastModified != null)) {
+      byte[] body = IOUtils.toByteArray(getResponseBody(method));
+      responseCache.put(url, etag == null ? null : etag.getValue(), lastModified == null ? null : lastModified.getValue(), body);
+      return new ByteArrayInputStream(body);
+    }
+    return getResponseBody(method);
+  }
+
+  /**
+   * Executes GET request, repeating it on connection errors and server errors (5xx),
+   * unless circuit of server is open or deadline expired.
+   * Circuit breaker gets one outcome for request with all its attempts, whatever exception ends it.
+   */
+  private void execute(GetMethod method) throws IOException {
+    if (circuitBreaker != null && !circuitBreaker.allowRequest()) {
+      throw new IOException("Requests to " + circuitBreaker.getHost() + " suspended after repeated failures");
+    }
+    // server answered with status below 500
+    boolean answered = false;
+    // at least one attempt was sent to server
+    boolean attempted = false;
     try {
-      SAXReader reader = new SAXReader();
-      String response = method.getResponseBodyAsString();
-      Pattern pattern = Pattern.compile("<\\?xml(?: \\w*=\".*\") encoding=\"([^ ]*)\".*");
-      Matcher matcher = pattern.matcher(response);
-      String encoding = "UTF-8";
-      if (matcher.matches()) {
-        encoding = matcher.group(1);
-      } else {
-        String contentType = method.getResponseHeader("Content-Type").getValue();
-        pattern = Pattern.compile(".*charset=([^;]*).*");
-        matcher = pattern.matcher(contentType);
-        if (matcher.matches()) {
-          encoding = matcher.group(1);
+      for (int attempt = 0; ; attempt++) {
+        if (deadline.isExpired()) {
+          partial = true;
+          throw new DeadlineExceededException();
+        }
+        // request doesn't wait for response longer than deadline allows
+        method.getParams().setSoTimeout((int) Math.max(1, Math.min(TIMEOUT, deadline.remaining())));
+        IOException failure = null;
+        try {
+          attempted = true;
+          client.executeMethod(method);
+          if (method.getStatusCode() < 500) {
+            answered = true;
+            return;
+          }
+        } catch (ConnectionPoolTimeoutException e) {
+          // no free connection until deadline, which isn't failure of server
+          attempted = attempt > 0;
+          partial = true;
+          throw new DeadlineExceededException();
+        } catch (IOException e) {
+          failure = e;
         }
+        if (attempt >= retries) {
+          if (failure != null) {
+            throw failure;
+          }
+          // unexpected status code is reported by caller
+          return;
+        }
+        LOG.debug("Repeating request to {}: {}", method.getURI(), failure == null ? method.getStatusLine() : failure.getMessage());
+        method.releaseConnection();
+        sleep(attempt);
       }
-      reader.setEncoding(encoding);
-      return reader.read(method.getResponseBodyAsStream());
-    } catch (DocumentException e) {
-      throw new SonarException(e);
+    } finally {
+      if (circuitBreaker != null) {
+        if (answered) {
+          circuitBreaker.recordSuccess();
+        } else if (attempted) {
+          circuitBreaker.recordFailure();
+        } else {
+          circuitBreaker.recordNoAttempt();
+        }
+      }
+    }
+  }
+
+  /**
+   * Exponential backoff with full jitter, so connectors don't repeat requests at the same time.
+   */
+  private void sleep(int attempt) throws InterruptedIOException {
+    long delay = (long) (random.nextDouble() * (retryDelay << Math.min(attempt, 16)));
+    delay = Math.min(delay, deadline.remaining());
+    try {
+      Thread.sleep(delay);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting to repeat request");
+    }
+  }
+
+  /**
+   * Compressed response is decompressed while it's read.
+   */
+  private static InputStream getResponseBody(GetMethod method) throws IOException {
+    InputStream body = method.getResponseBodyAsStream();
+    Header encoding = method.getResponseHeader("Content-Encoding");
+    return body == null || encoding == null ? body : decode(body, encoding.getValue());
+  }
+
+  static InputStream decode(InputStream body, String encoding) throws IOException {
+    String name = encoding.trim().toLowerCase();
+    if ("gzip".equals(name) || "x-gzip".equals(name)) {
+      return new GZIPInputStream(body);
+    }
+    if ("deflate".equals(name)) {
+      // some servers send raw deflate data instead of zlib format
+      BufferedInputStream buffered = new BufferedInputStream(body);
+      buffered.mark(2);
+      int first = buffered.read();
+      int second = buffered.read();
+      buffered.reset();
+      boolean zlib = first >= 0 && second >= 0 && (first & 0x0F) == 8 && ((first << 8) | second) % 31 == 0;
+      return new InflaterInputStream(buffered, new Inflater(!zlib)) {
+        @Override
+        public void close() throws IOException {
+          super.close();
+          inf.end();
+        }
+      };
+    }
+    if ("identity".equals(name) || "".equals(name)) {
+      return body;
     }
+    throw new IOException("Unsupported content encoding: " + encoding);
   }
 }
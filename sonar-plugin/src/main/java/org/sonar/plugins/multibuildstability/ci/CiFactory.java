@@ -16,10 +16,14 @@
 
 package org.sonar.plugins.multibuildstability.ci;
 
-import org.apache.commons.lang.StringUtils;
+import org.apache.commons.httpclient.HttpConnectionManager;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.sonar.plugins.multibuildstability.ci.bamboo.BambooServer;
 import org.sonar.plugins.multibuildstability.ci.hudson.HudsonServer;
 
+import java.net.MalformedURLException;
+import java.net.URL;
+
 /**
  * @author Evgeny Mandrikov
  */
@@ -31,6 +35,39 @@ public final class CiFactory {
   }
 
   public static CiConnector create(CiConfiguration config, String username, String password, boolean useJSecurityCheck) {
+    return create(config, username, password, useJSecurityCheck, new MultiThreadedHttpConnectionManager());
+  }
+
+  /**
+   * Connector, which shares connections and state of server with other connectors of given pool.
+   */
+  public static CiConnector create(CiConfiguration config, String username, String password, boolean useJSecurityCheck,
+                                   ConnectionPool connectionPool) {
+    CiConnector connector = create(config, username, password, useJSecurityCheck, connectionPool.getConnectionManager());
+    if (connector != null) {
+      String host = getAuthority(config.getUrl());
+      connector.setCircuitBreaker(connectionPool.getCircuitBreaker(host));
+      connector.setSession(connectionPool.getSession(host, username));
+    }
+    return connector;
+  }
+
+  /**
+   * @return host and port of given URL
+   */
+  static String getAuthority(String url) {
+    try {
+      return new URL(url).getAuthority();
+    } catch (MalformedURLException e) {
+      return url;
+    }
+  }
+
+  /**
+   * @param connectionManager connections to reuse, see {@link ConnectionPool}
+   */
+  public static CiConnector create(CiConfiguration config, String username, String password, boolean useJSecurityCheck,
+                                   HttpConnectionManager connectionManager) {
     AbstractServer server;
     String pattern;
     if (BambooServer.SYSTEM.equalsIgnoreCase(config.getSystem())) {
@@ -55,6 +92,6 @@ public final class CiFactory {
     server.setHost(base);
     server.setKey(key);
 
-    return new CiConnector(server);
+    return new CiConnector(server, connectionManager);
   }
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability.ci;
+
+/**
+ * Stops requests to CI server, which failed several times in a row, so they fail immediately instead of waiting
+ * for timeout. After a pause one request is let through: its success closes the circuit, its failure opens it again.
+ * Shared by all jobs on the same host, see {@link ConnectionPool#getCircuitBreaker(String)}.
+ */
+public class CircuitBreaker {
+  public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+  public static final long DEFAULT_OPEN_MILLIS = 30 * 1000;
+
+  private final String host;
+  private final int failureThreshold;
+  private final long openMillis;
+
+  private int failures;
+  private long openedAt;
+  private boolean open;
+  private boolean probing;
+
+  public CircuitBreaker(String host) {
+    this(host, DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MILLIS);
+  }
+
+  /**
+   * @param failureThreshold number of consecutive failed requests, which opens circuit; request with all its retries is one failure
+   * @param openMillis       time after which request is let through open circuit
+   */
+  public CircuitBreaker(String host, int failureThreshold, long openMillis) {
+    this.host = host;
+    this.failureThreshold = Math.max(1, failureThreshold);
+    this.openMillis = openMillis;
+  }
+
+  public String getHost() {
+    return host;
+  }
+
+  /**
+   * @return true, if request can be made
+   */
+  public synchronized boolean allowRequest() {
+    if (!open) {
+      return true;
+    }
+    if (!probing && System.currentTimeMillis() - openedAt >= openMillis) {
+      probing = true;
+      return true;
+    }
+    return false;
+  }
+
+  public synchronized void recordSuccess() {
+    failures = 0;
+    open = false;
+    probing = false;
+  }
+
+  /**
+   * Request ended before it was sent to server, e.g. at deadline, so it tells nothing about server
+   * and another request can probe it.
+   */
+  public synchronized void recordNoAttempt() {
+    probing = false;
+  }
+
+  public synchronized void recordFailure() {
+    failures++;
+    if (probing || failures >= failureThreshold) {
+      open = true;
+      probing = false;
+      openedAt = System.currentTimeMillis();
+    }
+  }
+
+  public synchronized boolean isOpen() {
+    return open;
+  }
+}
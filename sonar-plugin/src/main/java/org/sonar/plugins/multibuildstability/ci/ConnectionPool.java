@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability.ci;
+
+import org.apache.commons.httpclient.HttpConnectionManager;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
+import org.apache.commons.lang.StringUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keep-alive connections, {@link CircuitBreaker}s and {@link Session}s shared by all {@link CiConnector}s of one analysis,
+ * so jobs on the same CI server reuse connections and login instead of opening their own and stop requests together,
+ * when server is down.
+ */
+public class ConnectionPool {
+  /**
+   * Connections unused for this time are closed.
+   */
+  private static final long IDLE_TIMEOUT = 60 * 1000;
+
+  private final MultiThreadedHttpConnectionManager connectionManager;
+  private final IdleConnectionTimeoutThread idleConnectionTimeoutThread;
+  private final Map<String, CircuitBreaker> circuitBreakers = new HashMap<String, CircuitBreaker>();
+  private final Map<String, Session> sessions = new HashMap<String, Session>();
+
+  /**
+   * Jobs retrieved at the same time are usually on the same CI server, so each of them can have all its connections
+   * to one server, otherwise jobs would wait for each other.
+   *
+   * @param concurrency  maximum number of simultaneous requests of one job, see {@link CiConnector#setConcurrency(int)}
+   * @param parallelJobs maximum number of jobs retrieved at the same time
+   */
+  public ConnectionPool(int concurrency, int parallelJobs) {
+    int maxConnections = Math.max(1, concurrency) * Math.max(1, parallelJobs);
+    connectionManager = new MultiThreadedHttpConnectionManager();
+    connectionManager.getParams().setDefaultMaxConnectionsPerHost(maxConnections);
+    connectionManager.getParams().setMaxTotalConnections(maxConnections);
+    connectionManager.getParams().setStaleCheckingEnabled(true);
+
+    idleConnectionTimeoutThread = new IdleConnectionTimeoutThread();
+    idleConnectionTimeoutThread.setName("build-stability-idle-connections");
+    idleConnectionTimeoutThread.setConnectionTimeout(IDLE_TIMEOUT);
+    idleConnectionTimeoutThread.setTimeoutInterval(IDLE_TIMEOUT / 2);
+    idleConnectionTimeoutThread.addConnectionManager(connectionManager);
+    idleConnectionTimeoutThread.start();
+  }
+
+  public HttpConnectionManager getConnectionManager() {
+    return connectionManager;
+  }
+
+  /**
+   * @param host host and port of CI server
+   */
+  public synchronized CircuitBreaker getCircuitBreaker(String host) {
+    CircuitBreaker circuitBreaker = circuitBreakers.get(host);
+    if (circuitBreaker == null) {
+      circuitBreaker = new CircuitBreaker(host);
+      circuitBreakers.put(host, circuitBreaker);
+    }
+    return circuitBreaker;
+  }
+
+  /**
+   * @param host     host and port of CI server
+   * @param username user, which is logged in, or null for anonymous access
+   */
+  public synchronized Session getSession(String host, String username) {
+    String key = StringUtils.defaultString(username) + "@" + host;
+    Session session = sessions.get(key);
+    if (session == null) {
+      session = new Session();
+      sessions.put(key, session);
+    }
+    return session;
+  }
+
+  /**
+   * Closes all connections. Pool can't be used after this.
+   */
+  public void shutdown() {
+    idleConnectionTimeoutThread.shutdown();
+    connectionManager.shutdown();
+  }
+}
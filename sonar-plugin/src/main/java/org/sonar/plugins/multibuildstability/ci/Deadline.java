@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability.ci;
+
+/**
+ * Point in time, after which no more requests should be made to CI server.
+ */
+public final class Deadline {
+  /**
+   * Deadline, which never expires.
+   */
+  public static final Deadline NONE = new Deadline(Long.MAX_VALUE);
+
+  private final long time;
+
+  private Deadline(long time) {
+    this.time = time;
+  }
+
+  /**
+   * @param millis time from now, zero or negative for no deadline
+   */
+  public static Deadline after(long millis) {
+    if (millis <= 0) {
+      return NONE;
+    }
+    long now = System.currentTimeMillis();
+    return new Deadline(millis > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + millis);
+  }
+
+  public boolean isExpired() {
+    return System.currentTimeMillis() >= time;
+  }
+
+  /**
+   * @return milliseconds left, or {@link Long#MAX_VALUE} for no deadline
+   */
+  public long remaining() {
+    return this == NONE ? Long.MAX_VALUE : Math.max(0, time - System.currentTimeMillis());
+  }
+
+  /**
+   * @return earlier of this and given deadline
+   */
+  public Deadline min(Deadline other) {
+    return other.time < time ? other : this;
+  }
+}
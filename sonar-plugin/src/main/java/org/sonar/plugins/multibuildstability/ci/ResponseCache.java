@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability.ci;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Responses of CI server with their validators (ETag and Last-Modified), so requests can be made conditional
+ * and unchanged responses aren't transferred again. Only most recently used responses are kept,
+ * which is enough for requests repeated by each analysis, like last build. Whole responses are kept in memory,
+ * so only small responses for one build are cached.
+ */
+public class ResponseCache {
+  public static final int DEFAULT_MAX_ENTRIES = 100;
+
+  private static final int VERSION = 1;
+
+  private final File file;
+  private final String source;
+  private final Map<String, Entry> entries;
+
+  public ResponseCache(File directory, CiConfiguration config) {
+    this(directory, config, DEFAULT_MAX_ENTRIES);
+  }
+
+  public ResponseCache(File directory, CiConfiguration config, final int maxEntries) {
+    this.source = config.getSource();
+    this.file = new File(directory, "responses-" + Integer.toHexString(source.hashCode()) + ".bin");
+    this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, ResponseCache.Entry> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * @return cached response or null
+   */
+  public synchronized Entry get(String url) {
+    return entries.get(url);
+  }
+
+  /**
+   * Stores response, if it has at least one validator.
+   */
+  public synchronized void put(String url, String etag, String lastModified, byte[] body) {
+    if (etag == null && lastModified == null) {
+      entries.remove(url);
+    } else {
+      entries.put(url, new Entry(etag, lastModified, body));
+    }
+  }
+
+  public synchronized void remove(String url) {
+    entries.remove(url);
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public synchronized void load() throws IOException {
+    entries.clear();
+    if (!file.exists()) {
+      return;
+    }
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    try {
+      if (in.readInt() != VERSION || !source.equals(in.readUTF())) {
+        // another job with same hash or old format
+        return;
+      }
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        String url = in.readUTF();
+        String etag = readOptional(in);
+        String lastModified = readOptional(in);
+        byte[] body = new byte[in.readInt()];
+        in.readFully(body);
+        entries.put(url, new Entry(etag, lastModified, body));
+      }
+    } catch (EOFException e) {
+      entries.clear();
+      throw new IOException("Unable to read " + file + ": unexpected end of file");
+    } finally {
+      IOUtils.closeQuietly(in);
+    }
+  }
+
+  public synchronized void save() throws IOException {
+    File directory = file.getParentFile();
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create directory " + directory);
+    }
+    // Unique name, as several analyses may save the same job at once
+    File tmp = File.createTempFile(file.getName(), ".tmp", directory);
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+    try {
+      out.writeInt(VERSION);
+      out.writeUTF(source);
+      out.writeInt(entries.size());
+      for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+        out.writeUTF(entry.getKey());
+        writeOptional(out, entry.getValue().getETag());
+        writeOptional(out, entry.getValue().getLastModified());
+        out.writeInt(entry.getValue().body.length);
+        out.write(entry.getValue().body);
+      }
+      out.close();
+    } catch (IOException e) {
+      tmp.delete();
+      throw e;
+    } finally {
+      IOUtils.closeQuietly(out);
+    }
+    if (file.exists() && !file.delete() || !tmp.renameTo(file)) {
+      tmp.delete();
+      throw new IOException("Unable to write " + file);
+    }
+  }
+
+  private static String readOptional(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  private static void writeOptional(DataOutputStream out, String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeUTF(value);
+    }
+  }
+
+  public static final class Entry {
+    private final String etag;
+    private final String lastModified;
+    private final byte[] body;
+
+    Entry(String etag, String lastModified, byte[] body) {
+      this.etag = etag;
+      this.lastModified = lastModified;
+      this.body = body;
+    }
+
+    public String getETag() {
+      return etag;
+    }
+
+    public String getLastModified() {
+      return lastModified;
+    }
+
+    public byte[] getBody() {
+      return body;
+    }
+  }
+}
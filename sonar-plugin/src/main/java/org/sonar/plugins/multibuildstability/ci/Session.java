@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.sonar.plugins.multibuildstability.ci;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpState;
+
+import java.io.IOException;
+
+/**
+ * Cookies and credentials shared by all {@link CiConnector}s of one CI server, so login is done once
+ * and repeated only when server rejects session.
+ */
+public class Session {
+  private final HttpState state = new HttpState();
+
+  /**
+   * Number of successful logins.
+   */
+  private int logins;
+
+  public HttpState getState() {
+    return state;
+  }
+
+  public synchronized int getLogins() {
+    return logins;
+  }
+
+  /**
+   * Logs in with given client, unless already logged in. Other connectors wait, until login is done.
+   */
+  public synchronized void login(AbstractServer server, HttpClient client) throws IOException {
+    if (logins == 0) {
+      doLogin(server, client);
+    }
+  }
+
+  /**
+   * Logs in again, unless other connector already did it after given login, e.g. when several requests
+   * were rejected at the same time.
+   *
+   * @param login value of {@link #getLogins()} before rejected request
+   */
+  public synchronized void relogin(AbstractServer server, HttpClient client, int login) throws IOException {
+    if (logins == login) {
+      doLogin(server, client);
+    }
+  }
+
+  private void doLogin(AbstractServer server, HttpClient client) throws IOException {
+    server.doLogin(client);
+    logins++;
+  }
+}
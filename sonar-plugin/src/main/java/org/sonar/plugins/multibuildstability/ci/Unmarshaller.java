@@ -23,5 +23,8 @@ import org.sonar.plugins.multibuildstability.Build;
  * @author Evgeny Mandrikov
  */
 public interface Unmarshaller {
+  /**
+   * @return build, or null if it can't be used
+   */
   Build toModel(Element domElement);
 }
@@ -16,44 +16,101 @@
 
 package org.sonar.plugins.multibuildstability.ci.bamboo;
 
-import org.dom4j.Element;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.sonar.plugins.multibuildstability.Build;
-import org.sonar.plugins.multibuildstability.ci.Unmarshaller;
+import org.sonar.plugins.multibuildstability.ci.AbstractUnmarshaller;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * @author Evgeny Mandrikov
  */
-public class BambooBuildUnmarshaller implements Unmarshaller {
+public class BambooBuildUnmarshaller extends AbstractUnmarshaller {
+  private static final Logger LOG = LoggerFactory.getLogger(BambooBuildUnmarshaller.class);
+
   private static final String SUCCESSFULL = "Successful";
   private static final String FAILED = "Failed";
+  private static final String FINISHED = "Finished";
+
+  private static final Set<String> FIELDS = new HashSet<String>(Arrays.asList(
+      "state", "number", "lifeCycleState", "buildStartedTime", "buildDurationInSeconds"
+  ));
 
   /**
-   * Bamboo date-time format. Example: 2010-01-04T11:02:17.114-0600
+   * Bamboo date-time format. Examples: 2010-01-04T11:02:17.114-0600, 2011-05-24T16:43:32.000+02:00
    */
-  private static final String DATE_TIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'";
+  private static final String DATE_TIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSSZ";
 
-  public Build toModel(Element domElement) {
+  /**
+   * {@link SimpleDateFormat} isn't thread-safe, but creation of new one for each build is expensive.
+   */
+  private static final ThreadLocal<SimpleDateFormat> DATE_FORMAT = new ThreadLocal<SimpleDateFormat>() {
+    @Override
+    protected SimpleDateFormat initialValue() {
+      return new SimpleDateFormat(DATE_TIME_FORMAT);
+    }
+  };
+
+  @Override
+  protected Set<String> getFields() {
+    return FIELDS;
+  }
+
+  /**
+   * @return build, or null if its start time can't be parsed or finished build has no duration
+   */
+  @Override
+  protected Build toBuild(Map<String, String> fields) {
     Build build = new Build();
 
-    String state = domElement.attributeValue("state");
-    build.setNumber(Integer.parseInt(domElement.attributeValue("number")));
+    String state = fields.get("state");
+    build.setNumber(Integer.parseInt(fields.get("number")));
     build.setResult(state);
+    String lifeCycleState = fields.get("lifeCycleState");
+    build.setBuilding(lifeCycleState != null && !FINISHED.equalsIgnoreCase(lifeCycleState));
 
-    SimpleDateFormat sdf = new SimpleDateFormat(DATE_TIME_FORMAT);
-    String buildStartedTime = domElement.elementText("buildStartedTime");
+    String buildStartedTime = fields.get("buildStartedTime");
     try {
-      Date date = sdf.parse(buildStartedTime);
-      build.setTimestamp(date.getTime());
-    } catch (ParseException ignored) {
-      // ignore
+      build.setTimestamp(parseDate(buildStartedTime).getTime());
+    } catch (ParseException e) {
+      LOG.warn("Skipped build {}, because its start time can't be parsed: {}", build.getNumber(), buildStartedTime);
+      return null;
+    }
+    String duration = fields.get("buildDurationInSeconds");
+    if (duration != null) {
+      build.setDuration(Double.parseDouble(duration) * 1000);
+    } else if (build.isBuilding()) {
+      // running build has no duration yet, Hudson reports 0 for it too
+      build.setDuration(0);
+    } else {
+      LOG.warn("Skipped build {}, because it has no duration", build.getNumber());
+      return null;
     }
-    build.setDuration(Double.parseDouble(domElement.elementText("buildDurationInSeconds")) * 1000);
     build.setSuccessful(SUCCESSFULL.equalsIgnoreCase(state));
 
     return build;
   }
+
+  /**
+   * Accepts offset with and without colon, "Z" for UTC and time without milliseconds.
+   */
+  protected static Date parseDate(String value) throws ParseException {
+    if (value == null) {
+      throw new ParseException("No date", 0);
+    }
+    String normalized = value.trim();
+    if (normalized.endsWith("Z")) {
+      normalized = normalized.substring(0, normalized.length() - 1) + "+0000";
+    }
+    normalized = normalized.replaceFirst("([+-]\\d\\d):(\\d\\d)$", "$1$2");
+    normalized = normalized.replaceFirst("T(\\d\\d:\\d\\d:\\d\\d)([+-])", "T$1.000$2");
+    return DATE_FORMAT.get().parse(normalized);
+  }
 }
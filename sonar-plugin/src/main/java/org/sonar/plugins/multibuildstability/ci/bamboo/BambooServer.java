@@ -16,9 +16,15 @@
 
 package org.sonar.plugins.multibuildstability.ci.bamboo;
 
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.UsernamePasswordCredentials;
+import org.apache.commons.httpclient.auth.BasicScheme;
+import org.apache.commons.httpclient.methods.GetMethod;
 import org.sonar.plugins.multibuildstability.ci.AbstractServer;
 import org.sonar.plugins.multibuildstability.ci.Unmarshaller;
 
+import java.io.IOException;
+
 /**
  * See <a href="http://confluence.atlassian.com/display/BAMBOO/Bamboo+REST+APIs">Bamboo REST APIs</a>.
  *
@@ -29,13 +35,33 @@ public class BambooServer extends AbstractServer {
   public static final String PATTERN = "/browse/";
   private static final Unmarshaller BUILD_UNMARSHALLER = new BambooBuildUnmarshaller();
 
+  @Override
+  public String getSystem() {
+    return SYSTEM;
+  }
+
   protected String getBuildUrl(String number) {
     StringBuilder sb = new StringBuilder(getHost())
-        .append("/rest/api/latest/build/").append(getKey()).append("/").append(number)
-        .append("?os_authType=basic");
+        .append("/rest/api/latest/build/").append(getKey()).append("/").append(number);
     return sb.toString();
   }
 
+  /**
+   * Results of plan with details of each build, see <code>expand</code> parameter.
+   */
+  @Override
+  protected String getBuildListUrl(int start, int count) {
+    return new StringBuilder(getHost())
+        .append("/rest/api/latest/result/").append(getKey())
+        .append("?expand=results.result&start-index=").append(start).append("&max-results=").append(count)
+        .toString();
+  }
+
+  @Override
+  protected String getBuildListElement() {
+    return "result";
+  }
+
   @Override
   protected String getLastBuildUrl() {
     return getBuildUrl("latest");
@@ -45,4 +71,32 @@ public class BambooServer extends AbstractServer {
   protected Unmarshaller getBuildUnmarshaller() {
     return BUILD_UNMARSHALLER;
   }
+
+  /**
+   * Requests rely on session cookie, so credentials aren't sent and checked by Bamboo each time.
+   */
+  @Override
+  protected void configure(HttpClient client) {
+  }
+
+  /**
+   * Authenticates single request with basic authentication, which starts session.
+   */
+  @Override
+  protected void doLogin(HttpClient client) throws IOException {
+    if (!hasCredentials()) {
+      return;
+    }
+    String url = getHost() + "/rest/api/latest/info?os_authType=basic";
+    GetMethod method = new GetMethod(url);
+    method.setRequestHeader("Authorization", BasicScheme.authenticate(new UsernamePasswordCredentials(getUsername(), getPassword()), "ISO-8859-1"));
+    try {
+      client.executeMethod(method);
+    } finally {
+      method.releaseConnection();
+    }
+    if (method.getStatusCode() != 200) {
+      throw new IOException("Unable to login to Bamboo : " + url + ". HTTP status code : " + method.getStatusCode());
+    }
+  }
 }
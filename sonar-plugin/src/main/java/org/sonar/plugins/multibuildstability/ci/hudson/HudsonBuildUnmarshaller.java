@@ -16,23 +16,38 @@
 
 package org.sonar.plugins.multibuildstability.ci.hudson;
 
-import org.dom4j.Element;
 import org.sonar.plugins.multibuildstability.Build;
-import org.sonar.plugins.multibuildstability.ci.Unmarshaller;
+import org.sonar.plugins.multibuildstability.ci.AbstractUnmarshaller;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * @author Evgeny Mandrikov
  */
-public class HudsonBuildUnmarshaller implements Unmarshaller {
-  public Build toModel(Element domElement) {
+public class HudsonBuildUnmarshaller extends AbstractUnmarshaller {
+  private static final Set<String> FIELDS = new HashSet<String>(Arrays.asList(
+      "number", "timestamp", "duration", "result", "building"
+  ));
+
+  @Override
+  protected Set<String> getFields() {
+    return FIELDS;
+  }
+
+  @Override
+  protected Build toBuild(Map<String, String> fields) {
     Build build = new Build();
 
-    String result = domElement.elementText("result");
-    build.setNumber(Integer.parseInt(domElement.elementText("number")));
-    build.setTimestamp(Long.parseLong(domElement.elementText("timestamp")));
+    String result = fields.get("result");
+    build.setNumber(Integer.parseInt(fields.get("number")));
+    build.setTimestamp(Long.parseLong(fields.get("timestamp")));
     build.setResult(result);
-    build.setDuration(Long.parseLong(domElement.elementText("duration")));
+    build.setDuration(Long.parseLong(fields.get("duration")));
     build.setSuccessful("SUCCESS".equalsIgnoreCase(result));
+    build.setBuilding(Boolean.parseBoolean(fields.get("building")));
 
     return build;
   }
@@ -17,7 +17,6 @@
 package org.sonar.plugins.multibuildstability.ci.hudson;
 
 import org.apache.commons.httpclient.HttpClient;
-import org.apache.commons.lang.StringUtils;
 import org.sonar.plugins.multibuildstability.ci.AbstractServer;
 import org.sonar.plugins.multibuildstability.ci.Unmarshaller;
 
@@ -32,10 +31,20 @@ public class HudsonServer extends AbstractServer {
   public static final String SYSTEM = "Hudson";
   public static final String PATTERN = "/job/";
 
+  /**
+   * Fields required by {@link HudsonBuildUnmarshaller}.
+   */
+  private static final String BUILD_FIELDS = "number,timestamp,duration,result,building";
+
   private static final Unmarshaller BUILD_UNMARSHALLER = new HudsonBuildUnmarshaller();
 
   private boolean useJSecurityCheck;
 
+  @Override
+  public String getSystem() {
+    return SYSTEM;
+  }
+
   @Override
   protected String getBuildUrl(String number) {
     return getHost() + "/job/" + getKey() + "/" + number + "/api/xml/";
@@ -46,19 +55,42 @@ public class HudsonServer extends AbstractServer {
     return getBuildUrl("lastBuild");
   }
 
+  /**
+   * Uses tree parameter with range selector (<code>tree=allBuilds[...]{M,N}</code>), so one request returns whole page.
+   */
+  @Override
+  protected String getBuildListUrl(int start, int count) {
+    return getHost() + "/job/" + getKey() + "/api/xml?tree=allBuilds%5B" + BUILD_FIELDS + "%5D%7B" + start + "," + (start + count) + "%7D";
+  }
+
+  @Override
+  protected String getBuildListElement() {
+    return "allBuild";
+  }
+
   @Override
   protected Unmarshaller getBuildUnmarshaller() {
     return BUILD_UNMARSHALLER;
   }
 
+  /**
+   * With form login session cookie is used instead of credentials in each request.
+   */
+  @Override
+  protected void configure(HttpClient client) {
+    if (!isUseJSecurityCheck()) {
+      super.configure(client);
+    }
+  }
+
   @Override
   protected void doLogin(HttpClient client) throws IOException {
     if (!isUseJSecurityCheck()) {
       super.doLogin(client);
       return;
     }
-    if (!StringUtils.isBlank(getUsername()) && !StringUtils.isBlank(getPassword())) {
-      HudsonUtils.doLogin(client, getHost(), getUsername(), getPassword());
+    if (hasCredentials()) {
+      HudsonUtils.doLogin(client, getHost() + "/", getUsername(), getPassword());
     }
   }
 
@@ -36,7 +36,11 @@ public final class HudsonUtils {
   public static void doLogin(HttpClient client, String hostName, String username, String password) throws IOException {
     String hudsonLoginEntryUrl = hostName + "loginEntry";
     GetMethod loginLink = new GetMethod(hudsonLoginEntryUrl);
-    client.executeMethod(loginLink);
+    try {
+      client.executeMethod(loginLink);
+    } finally {
+      loginLink.releaseConnection();
+    }
     checkResult(loginLink.getStatusCode(), hudsonLoginEntryUrl);
 
     String location = hostName + "j_security_check";
@@ -45,7 +49,12 @@ public final class HudsonUtils {
       loginMethod.addParameter("j_username", username);
       loginMethod.addParameter("j_password", password);
       loginMethod.addParameter("action", "login");
-      client.executeMethod(loginMethod);
+      try {
+        client.executeMethod(loginMethod);
+      } finally {
+        // connection should be returned to pool, otherwise next request will wait for it forever
+        loginMethod.releaseConnection();
+      }
       if (loginMethod.getStatusCode() / 100 == 3) {
         // Commons HTTP client refuses to handle redirects for POST
         // so we have to do it manually.
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability;
+
+import org.junit.Test;
+
+import java.awt.*;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class BuildSeriesDatasetTest {
+  @Test
+  public void columnPerBuild() {
+    BuildSeriesDataset dataset = new BuildSeriesDataset(new BuildSeries().add(7, 1500, true).add(9, 3000, false));
+
+    assertThat(dataset.getRowCount(), is(1));
+    assertThat(dataset.getColumnCount(), is(2));
+    assertThat(dataset.getColumnKeys().size(), is(2));
+    assertThat(dataset.getColumnKey(1), is((Comparable) 9));
+    assertThat(dataset.getColumnIndex(9), is(1));
+    assertThat(dataset.getValue(0, 0), is((Number) 1.5));
+    assertThat(dataset.getValue(0, 1), is((Number) 3.0));
+    assertThat(dataset.getPaint(0), is((Paint) Color.GREEN));
+    assertThat(dataset.getPaint(1), is((Paint) Color.RED));
+  }
+
+  @Test
+  public void emptySeries() {
+    BuildSeriesDataset dataset = new BuildSeriesDataset(new BuildSeries());
+
+    assertThat(dataset.getColumnCount(), is(1));
+    assertThat(dataset.getValue(0, 0), is((Number) 0.0));
+    assertThat(dataset.getPaint(0), is((Paint) Color.GRAY));
+  }
+}
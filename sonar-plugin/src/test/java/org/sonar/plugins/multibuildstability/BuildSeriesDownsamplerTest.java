@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class BuildSeriesDownsamplerTest {
+  @Test
+  public void smallSeriesIsNotChanged() {
+    BuildSeries series = new BuildSeries().add(1, 10, true).add(2, 20, true);
+
+    assertThat(BuildSeriesDownsampler.downsample(series, 350), sameInstance(series));
+  }
+
+  @Test
+  public void numberOfBuildsIsLimited() {
+    BuildSeries series = new BuildSeries();
+    for (int i = 0; i < 2000; i++) {
+      series.add(i + 1, 1000 + i % 7, true);
+    }
+
+    BuildSeries result = BuildSeriesDownsampler.downsample(series, 350);
+
+    assertThat(result.size(), is(350));
+    assertThat(result.getNumber(0), is(1));
+    assertThat(result.getNumber(349), is(2000));
+    for (int i = 1; i < result.size(); i++) {
+      assertThat(result.getNumber(i) > result.getNumber(i - 1), is(true));
+    }
+  }
+
+  @Test
+  public void peaksAreKept() {
+    BuildSeries series = new BuildSeries();
+    for (int i = 0; i < 100; i++) {
+      series.add(i, i == 42 ? 60000 : 1000, true);
+    }
+
+    BuildSeries result = BuildSeriesDownsampler.downsample(series, 10);
+
+    boolean found = false;
+    for (int i = 0; i < result.size(); i++) {
+      found |= result.getNumber(i) == 42 && result.getDuration(i) == 60000;
+    }
+    assertThat(found, is(true));
+  }
+
+  @Test
+  public void anyFailureWins() {
+    BuildSeries series = new BuildSeries();
+    for (int i = 0; i < 100; i++) {
+      series.add(i, 1000, i != 55);
+    }
+
+    BuildSeries result = BuildSeriesDownsampler.downsample(series, 10);
+
+    int failed = 0;
+    for (int i = 0; i < result.size(); i++) {
+      failed += result.isSuccessful(i) ? 0 : 1;
+    }
+    assertThat(failed, is(1));
+  }
+}
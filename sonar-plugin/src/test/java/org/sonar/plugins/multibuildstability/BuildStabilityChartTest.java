@@ -20,12 +20,23 @@ import org.junit.Before;
 import org.junit.Test;
 import org.sonar.api.charts.AbstractChartTest;
 import org.sonar.api.charts.ChartParameters;
+import org.sonar.api.database.DatabaseSession;
+import org.sonar.api.database.model.MeasureModel;
+import org.sonar.api.database.model.ResourceModel;
+import org.sonar.api.database.model.Snapshot;
+import org.sonar.api.measures.Metric;
+import org.sonar.api.measures.MetricFinder;
 
 import java.awt.image.BufferedImage;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.Arrays;
 
+import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 /**
  * @author Evgeny Mandrikov
@@ -55,6 +66,88 @@ public class BuildStabilityChartTest extends AbstractChartTest {
 //    Thread.sleep(1000 * 30);
   }
 
+  @Test
+  public void series() throws Exception {
+    BuildSeries series = new BuildSeries().add(11, 5000, false).add(12, 10000, true).add(13, 10000, true).add(14, 20000, true);
+    BufferedImage image = chart.generateImage(new ChartParameters("w=350&h=200&s=" + BuildSeriesCodec.encode(series)));
+    assertChartSizeGreaterThan(image, 1000);
+    saveChart(image, "BuildStabilityChartTest/series.png");
+  }
+
+  @Test
+  public void seriesLoadedFromSnapshot() throws Exception {
+    BuildSeries series = new BuildSeries().add(7, 3000, true).add(8, 4000, false);
+    MeasureModel measure = mock(MeasureModel.class);
+    when(measure.getData()).thenReturn(JobMeasures.convertToString(Arrays.asList(
+        new JobMeasures("first"),
+        new JobMeasures("second").put(JobMeasures.SERIES_KEY, BuildSeriesCodec.encode(series))
+    )));
+    Metric metric = mock(Metric.class);
+    when(metric.getId()).thenReturn(5);
+    MetricFinder metricFinder = mock(MetricFinder.class);
+    when(metricFinder.findByKey(BuildStabilityMetrics.JOBS.getKey())).thenReturn(metric);
+    DatabaseSession session = mock(DatabaseSession.class);
+    when(session.getSingleResult(MeasureModel.class, "snapshotId", 3, "metricId", 5)).thenReturn(measure);
+    givenSnapshot(session, "group:project", 10, 3);
+    chart = new BuildStabilityChart(session, metricFinder);
+
+    assertThat(chart.loadSeries(3, "group:project", 1).size(), is(2));
+    assertThat(chart.loadSeries(3, "group:project", 1).isSuccessful(1), is(false));
+    assertThat(chart.loadSeries(3, "group:project", 0).isEmpty(), is(true));
+    assertThat(chart.loadSeries(3, "group:project", 2).isEmpty(), is(true));
+    assertThat(chart.loadSeries(4, "group:project", 1).isEmpty(), is(true));
+
+    BufferedImage image = chart.generateImage(new ChartParameters("w=350&h=200&sid=3&rk=group%3Aproject&job=1"));
+    assertChartSizeGreaterThan(image, 1000);
+  }
+
+  @Test
+  public void seriesOfSnapshotOfAnotherResourceIsNotLoaded() throws Exception {
+    MeasureModel measure = mock(MeasureModel.class);
+    when(measure.getData()).thenReturn(JobMeasures.convertToString(Arrays.asList(
+        new JobMeasures("job").put(JobMeasures.SERIES_KEY, BuildSeriesCodec.encode(new BuildSeries().add(1, 1000, true)))
+    )));
+    Metric metric = mock(Metric.class);
+    when(metric.getId()).thenReturn(5);
+    MetricFinder metricFinder = mock(MetricFinder.class);
+    when(metricFinder.findByKey(BuildStabilityMetrics.JOBS.getKey())).thenReturn(metric);
+    DatabaseSession session = mock(DatabaseSession.class);
+    when(session.getSingleResult(MeasureModel.class, "snapshotId", 3, "metricId", 5)).thenReturn(measure);
+    givenSnapshot(session, "group:project", 10, 3);
+    givenSnapshot(session, "group:other", 11, 4);
+    chart = new BuildStabilityChart(session, metricFinder);
+
+    assertThat(chart.loadSeries(3, "group:project", 0).size(), is(1));
+    assertThat(chart.loadSeries(3, "group:other", 0).isEmpty(), is(true));
+    assertThat(chart.loadSeries(3, "group:unknown", 0).isEmpty(), is(true));
+    assertThat(chart.loadSeries(3, "", 0).isEmpty(), is(true));
+  }
+
+  /**
+   * Snapshot with given id of resource with given key and id.
+   */
+  private static void givenSnapshot(DatabaseSession session, String resourceKey, int resourceId, int snapshotId) {
+    ResourceModel resource = mock(ResourceModel.class);
+    when(resource.getId()).thenReturn(resourceId);
+    when(session.getSingleResult(ResourceModel.class, "key", resourceKey)).thenReturn(resource);
+    when(session.getSingleResult(Snapshot.class, "id", snapshotId, "resourceId", resourceId)).thenReturn(mock(Snapshot.class));
+  }
+
+  @Test
+  public void imagesAreCached() throws Exception {
+    ChartCache cache = new ChartCache();
+    chart = new BuildStabilityChart(null, null, cache);
+    BuildSeries series = new BuildSeries().add(1, 1000, true);
+
+    BufferedImage image = chart.generateImage(new ChartParameters("w=350&h=200&s=" + BuildSeriesCodec.encode(series)));
+    assertThat(chart.generateImage(new ChartParameters("w=350&h=200&s=" + BuildSeriesCodec.encode(series))) == image, is(true));
+    chart.generateImage(new ChartParameters("w=300&h=200&s=" + BuildSeriesCodec.encode(series)));
+    chart.generateImage(new ChartParameters("w=350&h=200&s=" + BuildSeriesCodec.encode(series.add(2, 1000, false))));
+
+    assertThat(cache.size(), is(3));
+    assertThat(cache.getHits(), is(1L));
+  }
+
   private String encode(String prefix, String val) throws UnsupportedEncodingException {
     return prefix + URLEncoder.encode(val, "UTF-8");
   }
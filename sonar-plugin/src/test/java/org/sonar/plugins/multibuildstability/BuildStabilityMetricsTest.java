@@ -35,6 +35,12 @@ public class BuildStabilityMetricsTest {
 
   @Test
   public void testGetMetrics() throws Exception {
-    assertThat(metrics.getMetrics().size(), is(12 * 10));
+    assertThat(metrics.getMetrics().size(), is(13 * (BuildStabilityMetrics.MAX_WINDOWS + 1) + BuildStabilityMetrics.MAX_WINDOWS + 2));
+  }
+
+  @Test
+  public void metricInWindowHasOwnKey() throws Exception {
+    assertThat(BuildStabilityMetrics.inWindow(BuildStabilityMetrics.BUILDS, 0).getKey(), is("builds"));
+    assertThat(BuildStabilityMetrics.inWindow(BuildStabilityMetrics.BUILDS, 2).getKey(), is("builds_window_2"));
   }
 }
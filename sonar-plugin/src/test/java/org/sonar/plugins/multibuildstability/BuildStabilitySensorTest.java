@@ -22,7 +22,9 @@ import org.apache.maven.model.CiManagement;
 import org.apache.maven.project.MavenProject;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.sonar.api.batch.SensorContext;
+import org.sonar.api.measures.Measure;
 import org.sonar.api.resources.Project;
 import org.sonar.api.test.IsMeasure;
 
@@ -31,6 +33,7 @@ import java.util.Collections;
 import java.util.List;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Mockito.*;
@@ -95,26 +98,28 @@ public class BuildStabilitySensorTest {
         new Build(4, 20, "Fake", true, 5)
     );
 
-    sensor.analyseBuilds(builds, context, 42, "Blarg");
+    sensor.analyseBuilds(builds, context, "Blarg");
 
-    verify(context).saveMeasure(argThat((new IsMeasure(BuildStabilityMetrics.BUILDS(42), 4.0))));
-    verify(context).saveMeasure(argThat((new IsMeasure(BuildStabilityMetrics.FAILED(42), 1.0))));
-    verify(context).saveMeasure(argThat((new IsMeasure(BuildStabilityMetrics.SUCCESS_RATE(42), 75.0))));
+    verify(context).saveMeasure(argThat((new IsMeasure(BuildStabilityMetrics.BUILDS, 4.0))));
+    verify(context).saveMeasure(argThat((new IsMeasure(BuildStabilityMetrics.FAILED, 1.0))));
+    verify(context).saveMeasure(argThat((new IsMeasure(BuildStabilityMetrics.SUCCESS_RATE, 75.0))));
 
-    verify(context).saveMeasure(argThat((new IsMeasure(BuildStabilityMetrics.AVG_DURATION(42), 6.0))));
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.SHORTEST_DURATION(42), 3.0)));
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.LONGEST_DURATION(42), 10.0)));
+    verify(context).saveMeasure(argThat((new IsMeasure(BuildStabilityMetrics.AVG_DURATION, 6.0))));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.SHORTEST_DURATION, 3.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.LONGEST_DURATION, 10.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.MEDIAN_DURATION, 5.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.P90_DURATION, 10.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.P99_DURATION, 10.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.DURATION_HISTOGRAM, "min=3;max=10;b=3:1,5:1,10:1;")));
 
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.AVG_TIME_TO_FIX(42), 9.0)));
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.LONGEST_TIME_TO_FIX(42), 9.0)));
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.AVG_BUILDS_TO_FIX(42), 1.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.AVG_TIME_TO_FIX, 9.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.LONGEST_TIME_TO_FIX, 9.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.AVG_BUILDS_TO_FIX, 1.0)));
 
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.DURATIONS(42), "1=0.01;2=0.0040;3=0.0030;4=0.0050")));
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.RESULTS(42), "1=g;2=r;3=g;4=g")));
-
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.NAME(42), "Blarg")));
-
-    verifyNoMoreInteractions(context);
+    JobMeasures job = savedJob(context, 15);
+    assertThat(job.getName(), is("Blarg"));
+    assertThat(results(job), is("1=g;2=r;3=g;4=g;"));
+    assertThat(job.getValue(BuildStabilityMetrics.SUCCESS_RATE), is(75.0));
   }
 
   @Test
@@ -124,26 +129,26 @@ public class BuildStabilitySensorTest {
         new Build(1, 0, "Fake", false, 10)
     );
 
-    sensor.analyseBuilds(builds, context, 0, "hmm");
-
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.BUILDS(0), 1.0)));
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.FAILED(0), 1.0)));
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.SUCCESS_RATE(0), 0.0)));
+    sensor.analyseBuilds(builds, context, "hmm");
 
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.AVG_DURATION(0), 0.0)));
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.SHORTEST_DURATION(0), 0.0)));
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.LONGEST_DURATION(0), 0.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.BUILDS, 1.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.FAILED, 1.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.SUCCESS_RATE, 0.0)));
 
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.AVG_TIME_TO_FIX(0), 0.0)));
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.LONGEST_TIME_TO_FIX(0), 0.0)));
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.AVG_BUILDS_TO_FIX(0), 0.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.AVG_DURATION, 0.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.SHORTEST_DURATION, 0.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.LONGEST_DURATION, 0.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.MEDIAN_DURATION, 0.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.P90_DURATION, 0.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.P99_DURATION, 0.0)));
 
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.DURATIONS(0), "1=0.01")));
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.RESULTS(0), "1=r")));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.AVG_TIME_TO_FIX, 0.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.LONGEST_TIME_TO_FIX, 0.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.AVG_BUILDS_TO_FIX, 0.0)));
 
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.NAME(0), "hmm")));
-
-    verifyNoMoreInteractions(context);
+    JobMeasures job = savedJob(context, 14);
+    assertThat(job.getName(), is("hmm"));
+    assertThat(results(job), is("1=r;"));
   }
 
   @Test
@@ -153,26 +158,107 @@ public class BuildStabilitySensorTest {
         new Build(1, 0, "Fake", true, 10)
     );
 
-    sensor.analyseBuilds(builds, context, 1, "Something");
+    sensor.analyseBuilds(builds, context, "Something");
 
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.BUILDS(1), 1.0)));
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.FAILED(1), 0.0)));
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.SUCCESS_RATE(1), 100.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.BUILDS, 1.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.FAILED, 0.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.SUCCESS_RATE, 100.0)));
 
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.AVG_DURATION(1), 10.0)));
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.SHORTEST_DURATION(1), 10.0)));
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.LONGEST_DURATION(1), 10.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.AVG_DURATION, 10.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.SHORTEST_DURATION, 10.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.LONGEST_DURATION, 10.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.MEDIAN_DURATION, 10.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.P90_DURATION, 10.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.P99_DURATION, 10.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.DURATION_HISTOGRAM, "min=10;max=10;b=10:1;")));
 
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.AVG_TIME_TO_FIX(1), 0.0)));
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.LONGEST_TIME_TO_FIX(1), 0.0)));
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.AVG_BUILDS_TO_FIX(1), 0.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.AVG_TIME_TO_FIX, 0.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.LONGEST_TIME_TO_FIX, 0.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.AVG_BUILDS_TO_FIX, 0.0)));
 
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.DURATIONS(1), "1=0.01")));
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.RESULTS(1), "1=g")));
+    JobMeasures job = savedJob(context, 15);
+    assertThat(job.getName(), is("Something"));
+    assertThat(results(job), is("1=g;"));
+  }
+
+  @Test
+  public void testAnalyzeWindows() throws Exception {
+    long day = 24L * 60 * 60 * 1000;
+    List<Build> builds = Arrays.asList(
+        new Build(1, 1000, "Fake", false, 1),
+        new Build(2, day + 1000, "Fake", true, 2),
+        new Build(3, 2 * day + 1000, "Fake", false, 3),
+        new Build(4, 3 * day + 1000, "Fake", true, 4),
+        new Build(5, 4 * day + 1000, "Fake", true, 5),
+        new Build(6, 4 * day + 2000, "Fake", false, 0).setBuilding(true)
+    );
+    BuildStatistics[] totals = {new BuildStatistics(), new BuildStatistics()};
 
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.NAME(1), "Something")));
+    JobMeasures job = sensor.analyseBuilds(BuildHistory.of(builds), new JobStatistics(), "Blarg", new long[]{Long.MIN_VALUE, 2 * day + 5000}, totals);
 
-    verifyNoMoreInteractions(context);
+    // build in progress is ignored
+    assertThat(job.getValue(BuildStabilityMetrics.BUILDS), is(5.0));
+    assertThat(job.getValue(BuildStabilityMetrics.FAILED), is(2.0));
+    assertThat(results(job), is("1=r;2=g;3=r;4=g;5=g;"));
+
+    // period starts at midnight
+    assertThat(job.getValue(BuildStabilityMetrics.inWindow(BuildStabilityMetrics.BUILDS, 1)), is(3.0));
+    assertThat(job.getValue(BuildStabilityMetrics.inWindow(BuildStabilityMetrics.FAILED, 1)), is(1.0));
+    assertThat(job.getValue(BuildStabilityMetrics.inWindow(BuildStabilityMetrics.AVG_TIME_TO_FIX, 1)), is((double) day));
+    assertThat(job.getValue(BuildStabilityMetrics.inWindow(BuildStabilityMetrics.AVG_DURATION, 1)), is(4.5));
+
+    assertThat(totals[1].getCount(), is(3));
+  }
+
+  @Test
+  public void testJobsAreSavedTogether() throws Exception {
+    SensorContext context = mock(SensorContext.class);
+    BuildStatistics[] totals = {new BuildStatistics()};
+    long[] windows = {Long.MIN_VALUE};
+    JobMeasures first = sensor.analyseBuilds(BuildHistory.of(Arrays.asList(new Build(1, 0, "Fake", true, 10))), new JobStatistics(), "First", windows, totals);
+    JobMeasures second = sensor.analyseBuilds(BuildHistory.of(Arrays.asList(new Build(1, 0, "Fake", false, 10))), new JobStatistics(), "Second & last", windows, totals);
+
+    sensor.saveMeasures(context, totals, Arrays.asList(first, second));
+
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.BUILDS, 2.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.SUCCESS_RATE, 50.0)));
+    ArgumentCaptor<Measure> captor = ArgumentCaptor.forClass(Measure.class);
+    verify(context, atLeastOnce()).saveMeasure(captor.capture());
+    List<JobMeasures> jobs = JobMeasures.parseAll(captor.getValue().getData());
+    assertThat(jobs.size(), is(2));
+    assertThat(jobs.get(1).getName(), is("Second & last"));
+    assertThat(jobs.get(1).getValue(BuildStabilityMetrics.FAILED), is(1.0));
+  }
+
+  @Test
+  public void testPartialJobsAreCounted() throws Exception {
+    SensorContext context = mock(SensorContext.class);
+    BuildStatistics[] totals = {new BuildStatistics()};
+    long[] windows = {Long.MIN_VALUE};
+    BuildHistory history = BuildHistory.of(Arrays.asList(new Build(1, 0, "Fake", true, 10)));
+    JobMeasures complete = sensor.analyseBuilds(history, new JobStatistics(), "Complete", windows, totals);
+    JobMeasures partial = sensor.analyseBuilds(history, new JobStatistics(), "Partial", windows, totals, true);
+
+    sensor.saveMeasures(context, totals, Arrays.asList(complete, partial));
+
+    assertThat(complete.getValue(BuildStabilityMetrics.PARTIAL), nullValue());
+    assertThat(partial.getValue(BuildStabilityMetrics.PARTIAL), is(1.0));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.PARTIAL, 1.0)));
+  }
+
+  @Test
+  public void testWindows() throws Exception {
+    Configuration configuration = new BaseConfiguration();
+    Project project = mock(Project.class);
+    when(project.getConfiguration()).thenReturn(configuration);
+
+    assertThat(BuildStabilitySensor.getWindows(project).isEmpty(), is(true));
+
+    configuration.setProperty(BuildStabilitySensor.WINDOWS_PROPERTY, "1, 2,x,3,4");
+    assertThat(BuildStabilitySensor.getWindows(project), is(Arrays.asList(1, 2, 3)));
+
+    configuration.setProperty(BuildStabilitySensor.WINDOWS_PROPERTY, "");
+    assertThat(BuildStabilitySensor.getWindows(project).isEmpty(), is(true));
   }
 
   @Test
@@ -180,22 +266,54 @@ public class BuildStabilitySensorTest {
     SensorContext context = mock(SensorContext.class);
     List<Build> builds = Collections.emptyList();
 
-    sensor.analyseBuilds(builds, context, 2, "Woops");
+    sensor.analyseBuilds(builds, context, "Woops");
+
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.BUILDS, 0.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.FAILED, 0.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.SUCCESS_RATE, 0.0)));
 
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.BUILDS(2), 0.0)));
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.FAILED(2), 0.0)));
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.SUCCESS_RATE(2), 0.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.AVG_DURATION, 0.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.SHORTEST_DURATION, 0.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.LONGEST_DURATION, 0.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.MEDIAN_DURATION, 0.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.P90_DURATION, 0.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.P99_DURATION, 0.0)));
 
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.AVG_DURATION(2), 0.0)));
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.SHORTEST_DURATION(2), 0.0)));
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.LONGEST_DURATION(2), 0.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.AVG_TIME_TO_FIX, 0.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.LONGEST_TIME_TO_FIX, 0.0)));
+    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.AVG_BUILDS_TO_FIX, 0.0)));
 
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.AVG_TIME_TO_FIX(2), 0.0)));
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.LONGEST_TIME_TO_FIX(2), 0.0)));
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.AVG_BUILDS_TO_FIX(2), 0.0)));
+    JobMeasures job = savedJob(context, 14);
+    assertThat(job.getName(), is("Woops"));
+    assertThat(results(job), is(""));
+  }
 
-    verify(context).saveMeasure(argThat(new IsMeasure(BuildStabilityMetrics.NAME(2), "Woops")));
+  /**
+   * @return results of builds in series of given job, e.g. "1=g;2=r;"
+   */
+  private static String results(JobMeasures job) {
+    BuildSeries series = BuildSeriesCodec.decode(job.get(JobMeasures.SERIES_KEY));
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < series.size(); i++) {
+      sb.append(series.getNumber(i)).append('=').append(series.isSuccessful(i) ? 'g' : 'r').append(';');
+    }
+    return sb.toString();
+  }
 
-    verifyNoMoreInteractions(context);
+  /**
+   * @return measures of single job, after checking number of saved measures
+   */
+  private static JobMeasures savedJob(SensorContext context, int measures) {
+    ArgumentCaptor<Measure> captor = ArgumentCaptor.forClass(Measure.class);
+    verify(context, times(measures)).saveMeasure(captor.capture());
+    for (Measure measure : captor.getAllValues()) {
+      if (BuildStabilityMetrics.JOBS.equals(measure.getMetric())) {
+        List<JobMeasures> jobs = JobMeasures.parseAll(measure.getData());
+        assertThat(jobs.size(), is(1));
+        return jobs.get(0);
+      }
+    }
+    fail("Measures of jobs not saved");
+    return null;
   }
 }
@@ -17,7 +17,9 @@
 package org.sonar.plugins.multibuildstability;
 
 import org.junit.Test;
+import org.sonar.api.web.WidgetProperties;
 
+import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.junit.Assert.assertThat;
 
@@ -27,7 +29,13 @@ import static org.junit.Assert.assertThat;
 public class BuildStabilityWidgetTest {
   @Test
   public void testGetTemplatePath() {
-    String path = new BuildStabilityWidget(0).getTemplatePath();
+    String path = new BuildStabilityWidget().getTemplatePath();
     assertThat(getClass().getResource(path), notNullValue());
   }
+
+  @Test
+  public void jobsCanBeSelected() {
+    WidgetProperties properties = BuildStabilityWidget.class.getAnnotation(WidgetProperties.class);
+    assertThat(properties.value()[0].key(), is(BuildStabilityWidget.JOB_PROPERTY));
+  }
 }
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class ChartCacheTest {
+  private static final BufferedImage IMAGE = new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB);
+
+  @Test
+  public void leastRecentlyUsedImageIsEvicted() {
+    ChartCache cache = new ChartCache(3 * ChartCache.sizeOf(IMAGE));
+    cache.put("a", IMAGE);
+    cache.put("b", IMAGE);
+    cache.put("c", IMAGE);
+    cache.get("a");
+
+    cache.put("d", IMAGE);
+
+    assertThat(cache.size(), is(3));
+    assertThat(cache.get("b"), nullValue());
+    assertThat(cache.get("a"), is(IMAGE));
+    assertThat(cache.getBytes(), is(3 * ChartCache.sizeOf(IMAGE)));
+  }
+
+  @Test
+  public void replacedImageIsNotCountedTwice() {
+    ChartCache cache = new ChartCache();
+    cache.put("a", IMAGE);
+    cache.put("a", IMAGE);
+
+    assertThat(cache.getBytes(), is(ChartCache.sizeOf(IMAGE)));
+  }
+
+  @Test
+  public void imageLargerThanCacheIsNotKept() {
+    ChartCache cache = new ChartCache(ChartCache.sizeOf(IMAGE) - 1);
+    cache.put("a", IMAGE);
+
+    assertThat(cache.size(), is(0));
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.plugins.multibuildstability.ci.CiConfiguration;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class JobStatisticsTest {
+  private static final long DAY = 24L * 60 * 60 * 1000;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final CiConfiguration config = new CiConfiguration("", "hudson", "http://localhost/job/test");
+
+  @Test
+  public void onlyNewBuildsAreProcessed() throws Exception {
+    JobStatistics statistics = new JobStatistics(folder.getRoot(), config);
+    statistics.update(new BuildHistory.Builder()
+        .add(1, DAY, 10, true)
+        .add(2, 2 * DAY, 20, false)
+        .build(), 0, 3 * DAY);
+    statistics.save();
+
+    statistics = new JobStatistics(folder.getRoot(), config);
+    statistics.load();
+    assertThat(statistics.getLast(), is(2));
+    statistics.update(new BuildHistory.Builder()
+        // already processed, so ignored
+        .add(1, DAY, 1000, false)
+        .add(2, 2 * DAY, 20, false)
+        .add(3, 3 * DAY, 30, true)
+        .build(), 0, 4 * DAY);
+
+    BuildStatistics all = statistics.getStatistics(0);
+    assertThat(all.getCount(), is(3));
+    assertThat(BuildStatistics.fromString(all.convertToString()).convertToString(),
+        is("ok=2;fail=1;dur=40;min=10;max=30;fixes=1;ttf=86400000;btf=1;lttf=86400000;\tmin=10;max=30;b=10:1,30:1;"));
+  }
+
+  @Test
+  public void buildInProgressDelaysLaterBuilds() throws Exception {
+    JobStatistics statistics = new JobStatistics();
+    statistics.update(new BuildHistory.Builder()
+        .add(1, DAY, 10, true)
+        .add(2, 2 * DAY, 0, false, true)
+        .add(3, 2 * DAY, 30, true)
+        .build(), 0, 2 * DAY + 1000);
+
+    assertThat(statistics.getLast(), is(1));
+
+    statistics.update(new BuildHistory.Builder()
+        .add(2, 2 * DAY, 20, false)
+        .add(3, 2 * DAY, 30, true)
+        .build(), 0, 2 * DAY + 2000);
+
+    assertThat(statistics.getLast(), is(3));
+    assertThat(statistics.getStatistics(0).getCount(), is(3));
+  }
+
+  @Test
+  public void resetOfBuildNumbersRestartsStatistics() throws Exception {
+    JobStatistics statistics = new JobStatistics();
+    statistics.update(new BuildHistory.Builder()
+        .add(10, DAY, 10, true)
+        .add(11, 2 * DAY, 20, false)
+        .build(), 0, 3 * DAY);
+
+    // job was recreated, so old builds are gone and numbers start again
+    statistics.update(new BuildHistory.Builder()
+        .add(1, 3 * DAY, 30, true)
+        .add(2, 3 * DAY, 40, true)
+        .build(), 0, 4 * DAY);
+
+    assertThat(statistics.getLast(), is(2));
+    assertThat(statistics.getStatistics(0).getCount(), is(2));
+    assertThat(statistics.getStatistics(0).convertToString().startsWith("ok=2;fail=0;"), is(true));
+  }
+
+  @Test
+  public void oldDaysAreDropped() throws Exception {
+    JobStatistics statistics = new JobStatistics();
+    BuildHistory history = new BuildHistory.Builder()
+        .add(1, DAY, 10, true)
+        .add(2, 2 * DAY, 20, true)
+        .add(3, 3 * DAY, 30, true)
+        .build();
+    statistics.update(history, DAY, 4 * DAY);
+    statistics.update(history, 2 * DAY + 1000, 4 * DAY);
+
+    assertThat(statistics.getStatistics(0).getCount(), is(2));
+
+    // longer period requires recalculation
+    statistics.update(history, 0, 4 * DAY);
+    assertThat(statistics.getStatistics(0).getCount(), is(3));
+  }
+
+  @Test
+  public void statisticsOfAnotherJobAreIgnored() throws Exception {
+    JobStatistics statistics = new JobStatistics(folder.getRoot(), config);
+    statistics.update(new BuildHistory.Builder().add(1, DAY, 10, true).build(), 0, DAY);
+    statistics.save();
+
+    statistics = new JobStatistics(folder.getRoot(), new CiConfiguration("", "bamboo", "http://localhost/job/test"));
+    statistics.load();
+    assertThat(statistics.getLast(), is(0));
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability.ci;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.plugins.multibuildstability.Build;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class BuildCacheTest {
+  private static final CiConfiguration JOB = new CiConfiguration("", "hudson", "http://localhost/job/job");
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void runningBuildsAreNotCached() throws Exception {
+    BuildCache cache = new BuildCache(folder.getRoot(), JOB);
+    cache.update(Arrays.asList(
+        new Build(3, 3000, null, false, 0).setBuilding(true),
+        new Build(2, 2000, "SUCCESS", true, 20000),
+        new Build(1, 1000, "FAILURE", false, 10000)
+    ));
+    cache.save();
+
+    cache = new BuildCache(folder.getRoot(), JOB);
+    cache.load();
+    assertThat(cache.getNewest(), is(3));
+    assertThat(cache.getRunning().size(), is(1));
+    assertThat(cache.getOldest().getNumber(), is(1));
+
+    List<Build> builds = cache.getBuildsSince(new Date(0));
+    assertThat(builds.size(), is(2));
+    assertThat(builds.get(0).getNumber(), is(2));
+    assertThat(builds.get(0).isSuccessful(), is(true));
+    assertThat(builds.get(0).getDuration(), is(20000d));
+  }
+
+  @Test
+  public void durationsKeepMilliseconds() throws Exception {
+    BuildCache cache = new BuildCache(folder.getRoot(), JOB);
+    cache.update(Arrays.asList(new Build(1, 1000, "SUCCESS", true, 12345)));
+    cache.save();
+
+    cache = new BuildCache(folder.getRoot(), JOB);
+    cache.load();
+    Build build = cache.getOldest();
+    assertThat(build.getNumber(), is(1));
+    assertThat(build.getTimestamp(), is(1000L));
+    assertThat(build.getDuration(), is(12345d));
+    assertThat(build.isSuccessful(), is(true));
+  }
+
+  @Test
+  public void cacheOfOlderVersionIsIgnored() throws Exception {
+    BuildCache cache = new BuildCache(folder.getRoot(), JOB);
+    FileUtils.writeStringToFile(cache.getFile(), "source=Hudson|http://localhost|job\nnewest=1\n" + new Build(1, 1000, "SUCCESS", true, 12000).convertToString() + "\n", "UTF-8");
+
+    cache.load();
+
+    assertThat(cache.getNewest(), is(0));
+    assertThat(cache.getOldest() == null, is(true));
+  }
+
+  @Test
+  public void buildsOfAnotherJobAreIgnored() throws Exception {
+    BuildCache cache = new BuildCache(folder.getRoot(), JOB);
+    cache.update(Arrays.asList(new Build(1, 1000, "SUCCESS", true, 10000)));
+    cache.save();
+
+    cache = new BuildCache(folder.getRoot(), new CiConfiguration("", "hudson", "http://otherhost/job/job"));
+    cache.load();
+    assertThat(cache.getNewest(), is(0));
+    assertThat(cache.getOldest() == null, is(true));
+  }
+
+  @Test
+  public void pruneKeepsFirstBuildBeforeDate() throws Exception {
+    BuildCache cache = new BuildCache(folder.getRoot(), JOB);
+    cache.update(Arrays.asList(
+        new Build(1, 1000, "SUCCESS", true, 0),
+        new Build(2, 2000, "SUCCESS", true, 0),
+        new Build(3, 3000, "SUCCESS", true, 0)
+    ));
+    cache.setExhausted(true);
+
+    cache.prune(new Date(2500));
+
+    assertThat(cache.getOldest().getNumber(), is(2));
+    assertThat(cache.isExhausted(), is(false));
+    assertThat(cache.getBuildsSince(new Date(2500)).size(), is(2));
+  }
+
+  @Test
+  public void saveLeavesNoTemporaryFile() throws Exception {
+    BuildCache cache = new BuildCache(folder.getRoot(), JOB);
+    cache.update(Arrays.asList(new Build(1, 1000, "SUCCESS", true, 0)));
+    cache.save();
+    cache.save();
+
+    assertThat(Arrays.asList(folder.getRoot().list()), is(Arrays.asList(cache.getFile().getName())));
+  }
+}
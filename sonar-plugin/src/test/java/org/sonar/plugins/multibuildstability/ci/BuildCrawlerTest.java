@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability.ci;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.plugins.multibuildstability.Build;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.*;
+
+public class BuildCrawlerTest {
+  private CiConnector connector;
+  private SortedSet<Integer> missing;
+
+  @Before
+  public void setUp() throws Exception {
+    connector = mock(CiConnector.class);
+    missing = new TreeSet<Integer>();
+  }
+
+  /**
+   * Builds with numbers in given range are deleted, e.g. by log rotation.
+   */
+  private void givenDeletedBuilds(final int lowest, final int highest) throws Exception {
+    when(connector.getBuild(anyInt())).thenAnswer(new Answer<Build>() {
+      public Build answer(InvocationOnMock invocation) {
+        int number = (Integer) invocation.getArguments()[0];
+        return number >= lowest && number <= highest ? null : new Build(number, number * 1000L, "SUCCESS", true, 10);
+      }
+    });
+  }
+
+  @Test
+  public void doesNotWalkThroughDeletedBuilds() throws Exception {
+    givenDeletedBuilds(1, 9000);
+
+    List<Build> builds = new BuildCrawler(connector, 1, 30, missing).crawl(new ArrayList<Build>(), new Date(0), 10001, 0);
+
+    assertThat(builds.size(), is(1000));
+    verify(connector, atMost(1000 + 30)).getBuild(anyInt());
+    assertTrue(missing.contains(9000));
+  }
+
+  @Test
+  public void findsBuildsBelowGap() throws Exception {
+    givenDeletedBuilds(20, 80);
+
+    List<Build> builds = new BuildCrawler(connector, 4, 30, missing).crawl(new ArrayList<Build>(), new Date(0), 101, 0);
+
+    assertThat(builds.size(), is(39));
+    assertThat(builds.get(19).getNumber(), is(81));
+    assertThat(builds.get(20).getNumber(), is(19));
+    assertThat(builds.get(38).getNumber(), is(1));
+  }
+
+  @Test
+  public void findsEveryNthBuildKeptByRetention() throws Exception {
+    when(connector.getBuild(anyInt())).thenAnswer(new Answer<Build>() {
+      public Build answer(InvocationOnMock invocation) {
+        int number = (Integer) invocation.getArguments()[0];
+        return number % 10 == 0 ? new Build(number, number * 1000L, "SUCCESS", true, 10) : null;
+      }
+    });
+
+    List<Build> builds = new BuildCrawler(connector, 2, 30, missing).crawl(new ArrayList<Build>(), new Date(0), 101, 0);
+
+    assertThat(builds.size(), is(10));
+    for (int i = 0; i < builds.size(); i++) {
+      assertThat(builds.get(i).getNumber(), is(100 - i * 10));
+    }
+  }
+
+  @Test
+  public void onlyRequestedBuildsAreRememberedAsMissing() throws Exception {
+    givenDeletedBuilds(20, 80);
+
+    new BuildCrawler(connector, 1, 30, missing).crawl(new ArrayList<Build>(), new Date(0), 101, 0);
+
+    for (int number : missing) {
+      verify(connector).getBuild(number);
+      assertTrue(number >= 20 && number <= 80);
+    }
+  }
+
+  @Test
+  public void knownMissingBuildsAreNotRequested() throws Exception {
+    givenDeletedBuilds(5, 5);
+    missing.add(5);
+
+    new BuildCrawler(connector, 1, 30, missing).crawl(new ArrayList<Build>(), new Date(0), 11, 0);
+
+    verify(connector, never()).getBuild(5);
+    verify(connector, times(9)).getBuild(anyInt());
+  }
+
+  @Test
+  public void stopsOnFirstBuildBeforeDate() throws Exception {
+    givenDeletedBuilds(0, 0);
+
+    List<Build> builds = new BuildCrawler(connector, 3, 30, missing).crawl(new ArrayList<Build>(), new Date(7500), 11, 0);
+
+    assertThat(builds.size(), is(4));
+    assertThat(builds.get(3).getNumber(), is(7));
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability.ci;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.plugins.multibuildstability.Build;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Throughput of retrieval of long histories from {@link FakeCiServer}, run only with profile <code>load-tests</code>.
+ * Correctness is checked by {@link CiConnectorTest}. Size of history and latency of server can be changed with system properties
+ * <code>buildstability.loadtest.builds</code> (up to 100000) and <code>buildstability.loadtest.latency</code>
+ * (milliseconds per request).
+ */
+public class CiConnectorLoadTest {
+  private static final Logger LOG = LoggerFactory.getLogger(CiConnectorLoadTest.class);
+
+  private static final int BUILDS = Integer.getInteger("buildstability.loadtest.builds", 2000);
+  private static final long LATENCY = Long.getLong("buildstability.loadtest.latency", 0);
+  private static final int CONCURRENCY = 8;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private FakeCiServer server;
+  private ConnectionPool connectionPool;
+
+  @Before
+  public void setUp() {
+    server = new FakeCiServer(BUILDS).setLatency(LATENCY);
+    connectionPool = new ConnectionPool(CONCURRENCY, 1);
+  }
+
+  @After
+  public void tearDown() {
+    connectionPool.shutdown();
+    server.stop();
+  }
+
+  @Test
+  public void hudsonInBulk() throws Exception {
+    server.start();
+    List<Build> builds = retrieve("Hudson in bulk", hudson());
+
+    assertThat(builds.size(), is(BUILDS));
+    assertTrue(server.getRequests() <= BUILDS / CiConnector.DEFAULT_PAGE_SIZE + 2);
+  }
+
+  @Test
+  public void hudsonBuildByBuild() throws Exception {
+    server.setBulkSupported(false).start();
+    List<Build> builds = retrieve("Hudson build by build", hudson());
+
+    assertThat(builds.size(), is(BUILDS));
+    // rejected bulk request, last build and all others
+    assertThat(server.getRequests(), is(BUILDS + 1));
+  }
+
+  @Test
+  public void bambooInBulk() throws Exception {
+    server.start();
+    List<Build> builds = retrieve("Bamboo in bulk", bamboo());
+
+    assertThat(builds.size(), is(BUILDS));
+    assertTrue(server.getRequests() <= BUILDS / CiConnector.DEFAULT_PAGE_SIZE + 2);
+  }
+
+  @Test
+  public void bambooBuildByBuild() throws Exception {
+    server.setBulkSupported(false).start();
+    List<Build> builds = retrieve("Bamboo build by build", bamboo());
+
+    assertThat(builds.size(), is(BUILDS));
+    assertThat(server.getRequests(), is(BUILDS + 1));
+  }
+
+  @Test
+  public void deletedBuildsDoNotCostRequests() throws Exception {
+    server.setBulkSupported(false).setDeleted(1, BUILDS / 2).start();
+    List<Build> builds = retrieve("Hudson with deleted builds", hudson());
+
+    assertThat(builds.size(), is(BUILDS - BUILDS / 2));
+    assertTrue(server.getRequests() <= BUILDS - BUILDS / 2 + 2 + CiConnector.DEFAULT_MAX_MISSES);
+  }
+
+  private CiConnector hudson() {
+    return create(new CiConfiguration("", "hudson", server.getHudsonJobUrl()));
+  }
+
+  private CiConnector bamboo() {
+    return create(new CiConfiguration("", "bamboo", server.getBambooPlanUrl()));
+  }
+
+  private CiConnector create(CiConfiguration config) {
+    CiConnector connector = CiFactory.create(config, null, null, false, connectionPool);
+    connector.setConcurrency(CONCURRENCY);
+    connector.setCacheDirectory(folder.getRoot(), config);
+    return connector;
+  }
+
+  private List<Build> retrieve(String name, CiConnector connector) throws IOException {
+    long start = System.nanoTime();
+    List<Build> builds = connector.getBuildsSince(new Date(0));
+    long millis = Math.max(1, (System.nanoTime() - start) / 1000000);
+    LOG.debug("{}: {} builds, {} requests, {} ms, {} builds/s",
+        new Object[]{name, builds.size(), server.getRequests(), millis, builds.size() * 1000L / millis});
+    return builds;
+  }
+}
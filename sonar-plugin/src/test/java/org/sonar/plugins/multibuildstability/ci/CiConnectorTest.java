@@ -0,0 +1,377 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability.ci;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.plugins.multibuildstability.Build;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Retrieval of builds from {@link FakeCiServer} with short history, which still spans several pages.
+ */
+public class CiConnectorTest {
+  private static final int BUILDS = 250;
+  private static final int CONCURRENCY = 8;
+  private static final byte[] XML = "<freeStyleBuild><number>1</number></freeStyleBuild>".getBytes();
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private FakeCiServer server;
+  private ConnectionPool connectionPool;
+
+  @Before
+  public void setUp() {
+    server = new FakeCiServer(BUILDS);
+    connectionPool = new ConnectionPool(CONCURRENCY, 1);
+  }
+
+  @After
+  public void tearDown() {
+    connectionPool.shutdown();
+    server.stop();
+  }
+
+  @Test
+  public void hudsonInBulk() throws Exception {
+    server.start();
+    List<Build> builds = retrieve(hudson());
+
+    assertThat(builds.size(), is(BUILDS));
+    assertTrue(server.getRequests() <= BUILDS / CiConnector.DEFAULT_PAGE_SIZE + 2);
+  }
+
+  @Test
+  public void hudsonBuildByBuild() throws Exception {
+    server.setBulkSupported(false).start();
+    List<Build> builds = retrieve(hudson());
+
+    assertThat(builds.size(), is(BUILDS));
+    // rejected bulk request, last build and all others
+    assertThat(server.getRequests(), is(BUILDS + 1));
+  }
+
+  @Test
+  public void rejectedBulkRequestFallsBackToBuildByBuild() throws Exception {
+    server.setBulkStatus(400).start();
+    List<Build> builds = retrieve(hudson());
+
+    assertThat(builds.size(), is(BUILDS));
+    assertThat(builds.get(0).getNumber(), is(BUILDS));
+    assertThat(builds.get(BUILDS - 1).getNumber(), is(1));
+    // rejected bulk request, last build and all others
+    assertThat(server.getRequests(), is(BUILDS + 1));
+  }
+
+  @Test
+  public void concurrentRequestsAreLimitedPerConnector() throws Exception {
+    server.setLatency(10).setBulkSupported(false).start();
+    CiConnector connector = create(new CiConfiguration("", "hudson", server.getHudsonJobUrl()), false);
+    connector.setConcurrency(3);
+
+    List<Build> builds = retrieve(connector);
+
+    assertThat(builds.size(), is(BUILDS));
+    assertTrue(server.getMaxConcurrentRequests() > 1);
+    assertTrue(server.getMaxConcurrentRequests() <= 3);
+  }
+
+  @Test
+  public void connectionsOfPoolAreSharedByAllJobs() throws Exception {
+    server.setLatency(10).setBulkSupported(false).start();
+    connectionPool.shutdown();
+    connectionPool = new ConnectionPool(2, 1);
+    final CiConnector first = hudson();
+    CiConnector second = bamboo();
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<List<Build>> retrieval = executor.submit(new Callable<List<Build>>() {
+        public List<Build> call() throws IOException {
+          return retrieve(first);
+        }
+      });
+      assertThat(retrieve(second).size(), is(BUILDS));
+      assertThat(retrieval.get().size(), is(BUILDS));
+    } finally {
+      executor.shutdown();
+    }
+    assertTrue(server.getMaxConcurrentRequests() <= 2);
+  }
+
+  @Test
+  public void bambooInBulk() throws Exception {
+    server.start();
+    List<Build> builds = retrieve(bamboo());
+
+    assertThat(builds.size(), is(BUILDS));
+    assertTrue(server.getRequests() <= BUILDS / CiConnector.DEFAULT_PAGE_SIZE + 2);
+  }
+
+  @Test
+  public void bambooBuildByBuild() throws Exception {
+    server.setBulkSupported(false).start();
+    List<Build> builds = retrieve(bamboo());
+
+    assertThat(builds.size(), is(BUILDS));
+    assertThat(server.getRequests(), is(BUILDS + 1));
+  }
+
+  @Test
+  public void deletedBuildsDoNotCostRequests() throws Exception {
+    server.setBulkSupported(false).setDeleted(1, BUILDS / 2).start();
+    List<Build> builds = retrieve(hudson());
+
+    assertThat(builds.size(), is(BUILDS - BUILDS / 2));
+    assertTrue(server.getRequests() <= BUILDS - BUILDS / 2 + 2 + CiConnector.DEFAULT_MAX_MISSES);
+  }
+
+  @Test
+  public void cachedBuildsAreNotRetrievedAgain() throws Exception {
+    server.setRunning(2).start();
+    retrieve(hudson());
+    server.resetRequests();
+
+    List<Build> builds = retrieve(hudson());
+
+    assertThat(builds.size(), is(BUILDS));
+    // first page and two builds in progress
+    assertThat(server.getRequests(), is(3));
+  }
+
+  @Test
+  public void unchangedResponsesAreNotTransferredAgain() throws Exception {
+    server.setValidatorsSupported(true).setBulkSupported(false).start();
+    retrieve(hudson());
+    server.resetRequests();
+
+    List<Build> builds = retrieve(hudson());
+
+    assertThat(builds.size(), is(BUILDS));
+    // rejected bulk request and conditional request of last build
+    assertThat(server.getRequests(), is(2));
+    assertThat(server.getUnchangedResponses(), is(1));
+  }
+
+  @Test
+  public void listingsAreNotCached() throws Exception {
+    server.setValidatorsSupported(true).start();
+    retrieve(hudson());
+    server.resetRequests();
+
+    List<Build> builds = retrieve(hudson());
+
+    assertThat(builds.size(), is(BUILDS));
+    // listing may be large, so it's parsed while received instead of being kept for conditional request
+    assertThat(server.getRequests(), is(1));
+    assertThat(server.getUnchangedResponses(), is(0));
+  }
+
+  @Test
+  public void compressedResponses() throws Exception {
+    server.start();
+    retrieve(create(new CiConfiguration("", "hudson", server.getHudsonJobUrl()), false));
+    long uncompressed = server.getBytesSent();
+
+    for (String compression : new String[]{"gzip", "deflate"}) {
+      server.setCompression(compression).resetRequests();
+      List<Build> builds = retrieve(create(new CiConfiguration("", "hudson", server.getHudsonJobUrl()), false));
+
+      assertThat(builds.size(), is(BUILDS));
+      assertTrue(server.getBytesSent() * 3 < uncompressed);
+    }
+  }
+
+  @Test
+  public void gzip() throws Exception {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    compress(new GZIPOutputStream(buffer));
+
+    assertThat(decode(buffer, "gzip"), is(XML));
+    assertThat(decode(buffer, "x-gzip"), is(XML));
+  }
+
+  @Test
+  public void zlibDeflate() throws Exception {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    compress(new DeflaterOutputStream(buffer, new Deflater(Deflater.DEFAULT_COMPRESSION, false)));
+
+    assertThat(decode(buffer, "deflate"), is(XML));
+  }
+
+  @Test
+  public void rawDeflate() throws Exception {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    compress(new DeflaterOutputStream(buffer, new Deflater(Deflater.DEFAULT_COMPRESSION, true)));
+
+    assertThat(decode(buffer, "deflate"), is(XML));
+  }
+
+  @Test
+  public void identity() throws Exception {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    compress(buffer);
+
+    assertThat(decode(buffer, "identity"), is(XML));
+  }
+
+  @Test(expected = IOException.class)
+  public void unsupportedEncoding() throws Exception {
+    decode(new ByteArrayOutputStream(), "compress");
+  }
+
+  @Test
+  public void failedRequestsAreRepeated() throws Exception {
+    server.setErrorRate(0.2).start();
+    List<Build> builds = retrieve(hudson());
+
+    assertThat(builds.size(), is(BUILDS));
+  }
+
+  @Test(expected = IOException.class)
+  public void errorsAreReported() throws Exception {
+    server.setErrorRate(1).start();
+    hudson().getBuildsSince(new Date(0));
+  }
+
+  @Test
+  public void serverDownStopsRequestsOfAllJobs() throws Exception {
+    server.setErrorRate(1).setBulkSupported(false).start();
+    for (int i = 0; i < 3; i++) {
+      try {
+        hudson().getBuildsSince(new Date(0));
+      } catch (IOException e) {
+        // expected
+      }
+    }
+
+    // each failed request is repeated, but counted as one failure
+    assertThat(server.getRequests(), is(CircuitBreaker.DEFAULT_FAILURE_THRESHOLD * (CiConnector.DEFAULT_RETRIES + 1)));
+  }
+
+  @Test
+  public void deadlineStopsRetrieval() throws Exception {
+    server.setLatency(20).setBulkSupported(false).start();
+    CiConnector connector = hudson();
+    connector.setDeadline(Deadline.after(200));
+
+    long start = System.currentTimeMillis();
+    List<Build> builds = retrieve(connector);
+
+    assertTrue(System.currentTimeMillis() - start < 5000);
+    assertTrue(builds.size() < BUILDS);
+    assertThat(connector.isPartial(), is(true));
+
+    // builds retrieved before deadline are cached, so next analysis continues with older ones
+    connector = hudson();
+    builds = retrieve(connector);
+
+    assertThat(builds.size(), is(BUILDS));
+    assertThat(connector.isPartial(), is(false));
+  }
+
+  @Test
+  public void formLoginIsSharedByJobsOnSameHost() throws Exception {
+    server.setCredentials("user", "secret").start();
+    for (int i = 0; i < 3; i++) {
+      List<Build> builds = retrieve(create(new CiConfiguration("", "hudson", server.getHudsonJobUrl()), "user", "secret", true));
+      assertThat(builds.size(), is(BUILDS));
+    }
+    assertThat(server.getLogins(), is(1));
+
+    server.expireSessions();
+    List<Build> builds = retrieve(create(new CiConfiguration("", "hudson", server.getHudsonJobUrl()), "user", "secret", true));
+
+    assertThat(builds.size(), is(BUILDS));
+    assertThat(server.getLogins(), is(2));
+  }
+
+  @Test
+  public void bambooSessionIsSharedByJobsOnSameHost() throws Exception {
+    server.setCredentials("user", "secret").setBulkSupported(false).start();
+    for (int i = 0; i < 3; i++) {
+      List<Build> builds = retrieve(create(new CiConfiguration("", "bamboo", server.getBambooPlanUrl()), "user", "secret", false));
+      assertThat(builds.size(), is(BUILDS));
+    }
+
+    // credentials are checked once, not with each request
+    assertThat(server.getLogins(), is(1));
+  }
+
+  private CiConnector hudson() {
+    return create(new CiConfiguration("", "hudson", server.getHudsonJobUrl()));
+  }
+
+  private CiConnector bamboo() {
+    return create(new CiConfiguration("", "bamboo", server.getBambooPlanUrl()));
+  }
+
+  private CiConnector create(CiConfiguration config) {
+    return create(config, true);
+  }
+
+  private CiConnector create(CiConfiguration config, boolean cached) {
+    return create(config, null, null, false, cached);
+  }
+
+  private CiConnector create(CiConfiguration config, String username, String password, boolean useJSecurityCheck) {
+    return create(config, username, password, useJSecurityCheck, false);
+  }
+
+  private CiConnector create(CiConfiguration config, String username, String password, boolean useJSecurityCheck, boolean cached) {
+    CiConnector connector = CiFactory.create(config, username, password, useJSecurityCheck, connectionPool);
+    connector.setConcurrency(CONCURRENCY);
+    connector.setRetries(CiConnector.DEFAULT_RETRIES, 10);
+    connector.setCacheDirectory(cached ? folder.getRoot() : null, config);
+    return connector;
+  }
+
+  private static List<Build> retrieve(CiConnector connector) throws IOException {
+    return connector.getBuildsSince(new Date(0));
+  }
+
+  private static void compress(OutputStream out) throws IOException {
+    out.write(XML);
+    out.close();
+  }
+
+  private static byte[] decode(ByteArrayOutputStream buffer, String encoding) throws IOException {
+    return IOUtils.toByteArray(CiConnector.decode(new ByteArrayInputStream(buffer.toByteArray()), encoding));
+  }
+}
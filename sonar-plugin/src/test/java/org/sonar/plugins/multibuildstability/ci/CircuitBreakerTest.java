@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability.ci;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class CircuitBreakerTest {
+  @Test
+  public void opensAfterConsecutiveFailures() {
+    CircuitBreaker circuitBreaker = new CircuitBreaker("localhost", 2, 60000);
+    circuitBreaker.recordFailure();
+    circuitBreaker.recordSuccess();
+    circuitBreaker.recordFailure();
+    assertThat(circuitBreaker.allowRequest(), is(true));
+
+    circuitBreaker.recordFailure();
+
+    assertThat(circuitBreaker.isOpen(), is(true));
+    assertThat(circuitBreaker.allowRequest(), is(false));
+  }
+
+  @Test
+  public void singleRequestIsLetThroughAfterPause() {
+    CircuitBreaker circuitBreaker = new CircuitBreaker("localhost", 1, 0);
+    circuitBreaker.recordFailure();
+
+    assertThat(circuitBreaker.allowRequest(), is(true));
+    assertThat(circuitBreaker.allowRequest(), is(false));
+
+    circuitBreaker.recordSuccess();
+    assertThat(circuitBreaker.isOpen(), is(false));
+    assertThat(circuitBreaker.allowRequest(), is(true));
+  }
+
+  @Test
+  public void probeNotSentToServerLetsAnotherThrough() {
+    CircuitBreaker circuitBreaker = new CircuitBreaker("localhost", 1, 0);
+    circuitBreaker.recordFailure();
+    assertThat(circuitBreaker.allowRequest(), is(true));
+
+    circuitBreaker.recordNoAttempt();
+
+    assertThat(circuitBreaker.isOpen(), is(true));
+    assertThat(circuitBreaker.allowRequest(), is(true));
+  }
+
+  @Test
+  public void failedProbeOpensAgain() {
+    CircuitBreaker circuitBreaker = new CircuitBreaker("localhost", 3, 0);
+    for (int i = 0; i < 3; i++) {
+      circuitBreaker.recordFailure();
+    }
+    assertThat(circuitBreaker.allowRequest(), is(true));
+
+    circuitBreaker.recordFailure();
+
+    assertThat(circuitBreaker.isOpen(), is(true));
+    assertThat(circuitBreaker.allowRequest(), is(true));
+  }
+}
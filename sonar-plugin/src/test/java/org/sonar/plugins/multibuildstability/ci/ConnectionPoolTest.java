@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability.ci;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class ConnectionPoolTest {
+  private final ConnectionPool connectionPool = new ConnectionPool(2, 4);
+
+  @After
+  public void tearDown() {
+    connectionPool.shutdown();
+  }
+
+  @Test
+  public void circuitBreakerIsSharedByHost() {
+    CircuitBreaker circuitBreaker = connectionPool.getCircuitBreaker("ci:8080");
+
+    assertThat(connectionPool.getCircuitBreaker("ci:8080"), sameInstance(circuitBreaker));
+    assertThat(connectionPool.getCircuitBreaker("ci:8081"), not(sameInstance(circuitBreaker)));
+  }
+
+  @Test
+  public void sessionIsSharedByHostAndUser() {
+    Session session = connectionPool.getSession("ci:8080", "user");
+
+    assertThat(connectionPool.getSession("ci:8080", "user"), sameInstance(session));
+    assertThat(connectionPool.getSession("ci:8080", "other"), not(sameInstance(session)));
+    assertThat(connectionPool.getSession("ci:8080", null), not(sameInstance(session)));
+    assertThat(connectionPool.getSession("other:8080", "user"), not(sameInstance(session)));
+  }
+
+  @Test
+  public void connectionsAreEnoughForAllJobs() {
+    assertThat(connectionPool.getConnectionManager().getParams().getMaxTotalConnections(), is(8));
+  }
+}
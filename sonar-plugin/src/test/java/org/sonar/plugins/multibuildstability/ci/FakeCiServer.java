@@ -0,0 +1,470 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability.ci;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.httpclient.UsernamePasswordCredentials;
+import org.apache.commons.httpclient.auth.BasicScheme;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Stand-in for Hudson and Bamboo servers with synthetic history of one job, which emulates
+ * endpoints used by {@link CiConnector}. Latency and errors can be injected.
+ */
+public class FakeCiServer {
+  public static final String HUDSON_JOB = "job";
+  public static final String BAMBOO_PLAN = "PLAN-JOB";
+
+  private static final Pattern HUDSON_BUILD = Pattern.compile("/job/" + HUDSON_JOB + "/(\\w+)/api/xml/?");
+  private static final Pattern HUDSON_BUILDS = Pattern.compile("/job/" + HUDSON_JOB + "/api/xml/?");
+  private static final Pattern HUDSON_RANGE = Pattern.compile("\\{(\\d+),(\\d+)\\}");
+  private static final Pattern BAMBOO_BUILD = Pattern.compile("/rest/api/latest/build/" + BAMBOO_PLAN + "/(\\w+)");
+  private static final Pattern BAMBOO_RESULTS = Pattern.compile("/rest/api/latest/result/" + BAMBOO_PLAN);
+  private static final Pattern PARAMETER = Pattern.compile("(?:^|&)([^=&]+)=([^&]*)");
+  private static final Pattern SESSION_COOKIE = Pattern.compile("JSESSIONID=([\\w-]+)");
+
+  private static final long INTERVAL = 10 * 60 * 1000;
+
+  private final int builds;
+  private final long now = System.currentTimeMillis();
+  private final AtomicInteger requests = new AtomicInteger();
+  private final AtomicLong bytesSent = new AtomicLong();
+  private final AtomicInteger unchangedResponses = new AtomicInteger();
+  private final AtomicInteger logins = new AtomicInteger();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicInteger maxInFlight = new AtomicInteger();
+  private final Set<String> sessions = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  private final Random random = new Random(42);
+
+  private HttpServer server;
+  private ExecutorService executor;
+
+  private long latency;
+  private double errorRate;
+  private boolean bulkSupported = true;
+  private int bulkStatus;
+  private int deletedFrom;
+  private int deletedTo;
+  private int running;
+  private boolean validatorsSupported;
+  private String compression;
+  private String username;
+  private String password;
+
+  /**
+   * @param builds number of builds in history, newest build started 10 minutes ago, previous 10 minutes before it and so on
+   */
+  public FakeCiServer(int builds) {
+    this.builds = builds;
+  }
+
+  public FakeCiServer setLatency(long latency) {
+    this.latency = latency;
+    return this;
+  }
+
+  public FakeCiServer setErrorRate(double errorRate) {
+    this.errorRate = errorRate;
+    return this;
+  }
+
+  public FakeCiServer setBulkSupported(boolean bulkSupported) {
+    this.bulkSupported = bulkSupported;
+    return this;
+  }
+
+  /**
+   * Bulk requests are answered with given status, e.g. 400 like by server, which doesn't know <code>tree</code> parameter.
+   */
+  public FakeCiServer setBulkStatus(int bulkStatus) {
+    this.bulkStatus = bulkStatus;
+    return this;
+  }
+
+  /**
+   * Builds with numbers in given range (inclusive) don't exist.
+   */
+  public FakeCiServer setDeleted(int from, int to) {
+    this.deletedFrom = from;
+    this.deletedTo = to;
+    return this;
+  }
+
+  /**
+   * Responses have ETag and requests with matching If-None-Match are answered with 304.
+   */
+  public FakeCiServer setValidatorsSupported(boolean validatorsSupported) {
+    this.validatorsSupported = validatorsSupported;
+    return this;
+  }
+
+  /**
+   * Responses are compressed with given encoding ("gzip" or "deflate"), if client accepts it.
+   */
+  public FakeCiServer setCompression(String compression) {
+    this.compression = compression;
+    return this;
+  }
+
+  /**
+   * Requests need session cookie or basic authentication. Session is started by form login (Hudson),
+   * by request with <code>os_authType=basic</code> (Bamboo) or by any request with basic authentication.
+   */
+  public FakeCiServer setCredentials(String username, String password) {
+    this.username = username;
+    this.password = password;
+    return this;
+  }
+
+  /**
+   * Invalidates all sessions, so clients have to login again.
+   */
+  public void expireSessions() {
+    sessions.clear();
+  }
+
+  /**
+   * @return number of times credentials were checked
+   */
+  public int getLogins() {
+    return logins.get();
+  }
+
+  /**
+   * Given number of newest builds are in progress.
+   */
+  public FakeCiServer setRunning(int running) {
+    this.running = running;
+    return this;
+  }
+
+  public void start() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    executor = Executors.newCachedThreadPool();
+    server.setExecutor(executor);
+    server.createContext("/", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        int concurrent = inFlight.incrementAndGet();
+        synchronized (maxInFlight) {
+          maxInFlight.set(Math.max(maxInFlight.get(), concurrent));
+        }
+        try {
+          serve(exchange);
+        } finally {
+          inFlight.decrementAndGet();
+          exchange.close();
+        }
+      }
+    });
+    server.start();
+  }
+
+  public void stop() {
+    if (server != null) {
+      server.stop(0);
+      executor.shutdownNow();
+    }
+  }
+
+  public String getUrl() {
+    return "http://localhost:" + server.getAddress().getPort();
+  }
+
+  public String getHudsonJobUrl() {
+    return getUrl() + "/job/" + HUDSON_JOB;
+  }
+
+  public String getBambooPlanUrl() {
+    return getUrl() + "/browse/" + BAMBOO_PLAN;
+  }
+
+  public int getRequests() {
+    return requests.get();
+  }
+
+  /**
+   * @return maximum number of requests served at the same time
+   */
+  public int getMaxConcurrentRequests() {
+    return maxInFlight.get();
+  }
+
+  /**
+   * @return total size of response bodies as transferred, i.e. after compression
+   */
+  public long getBytesSent() {
+    return bytesSent.get();
+  }
+
+  /**
+   * @return number of responses with status 304, because request was conditional and response didn't change
+   */
+  public int getUnchangedResponses() {
+    return unchangedResponses.get();
+  }
+
+  public void resetRequests() {
+    requests.set(0);
+    bytesSent.set(0);
+    unchangedResponses.set(0);
+  }
+
+  public long getTimestamp(int number) {
+    return now - (builds - number + 1) * INTERVAL;
+  }
+
+  public boolean exists(int number) {
+    return number >= 1 && number <= builds && (number < deletedFrom || number > deletedTo);
+  }
+
+  private boolean isRunning(int number) {
+    return number > builds - running;
+  }
+
+  private boolean isSuccessful(int number) {
+    return number % 7 != 0;
+  }
+
+  private long getDuration(int number) {
+    return isRunning(number) ? 0 : 60000 + (number * 7919L) % 600000;
+  }
+
+  private void serve(HttpExchange exchange) throws IOException {
+    if (latency > 0) {
+      try {
+        Thread.sleep(latency);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    if (errorRate > 0 && nextDouble() < errorRate) {
+      send(exchange, 503, "Service Unavailable");
+      return;
+    }
+    String path = exchange.getRequestURI().getRawPath();
+    String query = exchange.getRequestURI().getRawQuery();
+    if (username != null && !authenticate(exchange, path)) {
+      return;
+    }
+    if (bulkStatus != 0 && (HUDSON_BUILDS.matcher(path).matches() || BAMBOO_RESULTS.matcher(path).matches())) {
+      send(exchange, bulkStatus, "Bad request");
+      return;
+    }
+    Matcher matcher;
+    if ((matcher = HUDSON_BUILD.matcher(path)).matches()) {
+      int number = toNumber(matcher.group(1), "lastBuild");
+      if (exists(number)) {
+        send(exchange, 200, "<freeStyleBuild>" + hudsonBuild(number) + "</freeStyleBuild>");
+        return;
+      }
+    } else if (HUDSON_BUILDS.matcher(path).matches() && bulkSupported) {
+      matcher = HUDSON_RANGE.matcher(URLDecoder.decode(query, "UTF-8"));
+      if (matcher.find()) {
+        StringBuilder sb = new StringBuilder("<freeStyleProject>");
+        int start = Integer.parseInt(matcher.group(1));
+        int end = Integer.parseInt(matcher.group(2));
+        for (int index = start; index < end && numberAt(index) > 0; index++) {
+          sb.append("<allBuild>").append(hudsonBuild(numberAt(index))).append("</allBuild>");
+        }
+        send(exchange, 200, sb.append("</freeStyleProject>").toString());
+        return;
+      }
+    } else if ((matcher = BAMBOO_BUILD.matcher(path)).matches()) {
+      int number = toNumber(matcher.group(1), "latest");
+      if (exists(number)) {
+        send(exchange, 200, bambooResult(number));
+        return;
+      }
+    } else if (BAMBOO_RESULTS.matcher(path).matches() && bulkSupported) {
+      int start = Integer.parseInt(getParameter(query, "start-index"));
+      int count = Integer.parseInt(getParameter(query, "max-results"));
+      StringBuilder sb = new StringBuilder("<results><results>");
+      for (int index = start; index < start + count && numberAt(index) > 0; index++) {
+        sb.append(bambooResult(numberAt(index)));
+      }
+      send(exchange, 200, sb.append("</results></results>").toString());
+      return;
+    }
+    send(exchange, 404, "Not found");
+  }
+
+  /**
+   * Handles login requests and rejects requests without session or credentials.
+   *
+   * @return true, if request should be served
+   */
+  private boolean authenticate(HttpExchange exchange, String path) throws IOException {
+    if ("/loginEntry".equals(path)) {
+      send(exchange, 200, "<html/>");
+      return false;
+    }
+    if ("/j_security_check".equals(path)) {
+      String form = IOUtils.toString(exchange.getRequestBody(), "UTF-8");
+      if (username.equals(URLDecoder.decode(getParameter(form, "j_username"), "UTF-8"))
+          && password.equals(URLDecoder.decode(getParameter(form, "j_password"), "UTF-8"))) {
+        startSession(exchange);
+        send(exchange, 200, "<html/>");
+      } else {
+        send(exchange, 401, "Unauthorized");
+      }
+      return false;
+    }
+    String cookie = exchange.getRequestHeaders().getFirst("Cookie");
+    Matcher matcher = SESSION_COOKIE.matcher(cookie == null ? "" : cookie);
+    if (matcher.find() && sessions.contains(matcher.group(1))) {
+      return true;
+    }
+    String expected = BasicScheme.authenticate(new UsernamePasswordCredentials(username, password), "ISO-8859-1");
+    if (expected.equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+      startSession(exchange);
+      if ("/rest/api/latest/info".equals(path)) {
+        send(exchange, 200, "<info/>");
+        return false;
+      }
+      return true;
+    }
+    send(exchange, 401, "Unauthorized");
+    return false;
+  }
+
+  private void startSession(HttpExchange exchange) {
+    logins.incrementAndGet();
+    String session = UUID.randomUUID().toString();
+    sessions.add(session);
+    exchange.getResponseHeaders().add("Set-Cookie", "JSESSIONID=" + session + "; Path=/");
+  }
+
+  private synchronized double nextDouble() {
+    return random.nextDouble();
+  }
+
+  /**
+   * @return number of build at given position in list of existing builds, newest first
+   */
+  private int numberAt(int index) {
+    int number = builds - index;
+    if (deletedTo > 0 && number <= deletedTo) {
+      number -= deletedTo - deletedFrom + 1;
+    }
+    return number;
+  }
+
+  private int toNumber(String value, String last) {
+    if (last.equals(value)) {
+      int number = builds;
+      while (number > 0 && !exists(number)) {
+        number--;
+      }
+      return number;
+    }
+    try {
+      return Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static String getParameter(String query, String name) {
+    Matcher matcher = PARAMETER.matcher(query == null ? "" : query);
+    while (matcher.find()) {
+      if (name.equals(matcher.group(1))) {
+        return matcher.group(2);
+      }
+    }
+    return null;
+  }
+
+  private String hudsonBuild(int number) {
+    StringBuilder sb = new StringBuilder()
+        .append("<building>").append(isRunning(number)).append("</building>")
+        .append("<duration>").append(getDuration(number)).append("</duration>")
+        .append("<number>").append(number).append("</number>");
+    if (!isRunning(number)) {
+      sb.append("<result>").append(isSuccessful(number) ? "SUCCESS" : "FAILURE").append("</result>");
+    }
+    return sb.append("<timestamp>").append(getTimestamp(number)).append("</timestamp>").toString();
+  }
+
+  private String bambooResult(int number) {
+    return new StringBuilder()
+        .append("<result key=\"").append(BAMBOO_PLAN).append('-').append(number).append("\"")
+        .append(" state=\"").append(isRunning(number) ? "Unknown" : isSuccessful(number) ? "Successful" : "Failed").append("\"")
+        .append(" lifeCycleState=\"").append(isRunning(number) ? "InProgress" : "Finished").append("\"")
+        .append(" number=\"").append(number).append("\">")
+        .append("<buildStartedTime>").append(new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ").format(new Date(getTimestamp(number))))
+        .append("</buildStartedTime>")
+        .append("<buildDurationInSeconds>").append(getDuration(number) / 1000).append("</buildDurationInSeconds>")
+        .append("</result>")
+        .toString();
+  }
+
+  private void send(HttpExchange exchange, int status, String body) throws IOException {
+    byte[] bytes = body.getBytes("UTF-8");
+    if (validatorsSupported && status == 200) {
+      String etag = "\"" + Integer.toHexString(body.hashCode()) + "\"";
+      exchange.getResponseHeaders().set("ETag", etag);
+      if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+        unchangedResponses.incrementAndGet();
+        exchange.sendResponseHeaders(304, -1);
+        return;
+      }
+    }
+    String accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+    if (compression != null && accepted != null && accepted.contains(compression)) {
+      bytes = compress(bytes);
+      exchange.getResponseHeaders().set("Content-Encoding", compression);
+    }
+    bytesSent.addAndGet(bytes.length);
+    exchange.getResponseHeaders().set("Content-Type", "application/xml;charset=UTF-8");
+    exchange.sendResponseHeaders(status, bytes.length);
+    OutputStream out = exchange.getResponseBody();
+    out.write(bytes);
+    out.close();
+  }
+
+  private byte[] compress(byte[] bytes) throws IOException {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    OutputStream out = "gzip".equals(compression) ? new GZIPOutputStream(buffer) : new DeflaterOutputStream(buffer);
+    out.write(bytes);
+    out.close();
+    return buffer.toByteArray();
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability.ci;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class ResponseCacheTest {
+  private static final CiConfiguration JOB = new CiConfiguration("", "hudson", "http://localhost/job/job");
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void responsesAreSaved() throws Exception {
+    ResponseCache cache = new ResponseCache(folder.getRoot(), JOB);
+    cache.put("http://localhost/job/job/lastBuild/api/xml", "\"abc\"", null, new byte[]{1, 2, 3});
+    cache.put("http://localhost/job/job/api/xml", null, "Sat, 01 Jan 2011 00:00:00 GMT", new byte[0]);
+    cache.save();
+
+    cache = new ResponseCache(folder.getRoot(), JOB);
+    cache.load();
+    assertThat(cache.size(), is(2));
+    ResponseCache.Entry entry = cache.get("http://localhost/job/job/lastBuild/api/xml");
+    assertThat(entry.getETag(), is("\"abc\""));
+    assertThat(entry.getLastModified(), nullValue());
+    assertThat(entry.getBody(), is(new byte[]{1, 2, 3}));
+    assertThat(cache.get("http://localhost/job/job/api/xml").getLastModified(), is("Sat, 01 Jan 2011 00:00:00 GMT"));
+  }
+
+  @Test
+  public void responsesWithoutValidatorsAreNotCached() {
+    ResponseCache cache = new ResponseCache(folder.getRoot(), JOB);
+    cache.put("url", null, null, new byte[0]);
+
+    assertThat(cache.get("url"), nullValue());
+  }
+
+  @Test
+  public void leastRecentlyUsedResponseIsEvicted() {
+    ResponseCache cache = new ResponseCache(folder.getRoot(), JOB, 2);
+    cache.put("a", "1", null, new byte[0]);
+    cache.put("b", "2", null, new byte[0]);
+    cache.get("a");
+    cache.put("c", "3", null, new byte[0]);
+
+    assertThat(cache.get("b"), nullValue());
+    assertThat(cache.get("a").getETag(), is("1"));
+  }
+
+  @Test
+  public void responsesOfAnotherJobAreIgnored() throws Exception {
+    ResponseCache cache = new ResponseCache(folder.getRoot(), JOB);
+    cache.put("url", "1", null, new byte[0]);
+    cache.save();
+
+    cache = new ResponseCache(folder.getRoot(), new CiConfiguration("", "hudson", "http://otherhost/job/job"));
+    cache.load();
+    assertThat(cache.size(), is(0));
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability.ci;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class SessionTest {
+  private static final int THREADS = 8;
+
+  private final CountingServer server = new CountingServer();
+  private final HttpClient client = new HttpClient();
+  private final Session session = new Session();
+
+  @Test
+  public void loginIsDoneOnce() throws Exception {
+    session.login(server, client);
+    session.login(server, client);
+
+    assertThat(server.logins.get(), is(1));
+    assertThat(session.getLogins(), is(1));
+  }
+
+  @Test
+  public void reloginIsDoneOnceForRequestsRejectedTogether() throws Exception {
+    session.login(server, client);
+    final int login = session.getLogins();
+
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      List<Future<Void>> relogins = new ArrayList<Future<Void>>();
+      for (int i = 0; i < THREADS; i++) {
+        relogins.add(executor.submit(new Callable<Void>() {
+          public Void call() throws IOException {
+            session.relogin(server, client, login);
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> relogin : relogins) {
+        relogin.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertThat(server.logins.get(), is(2));
+    assertThat(session.getLogins(), is(2));
+  }
+
+  @Test
+  public void reloginIsRepeatedWhenNewSessionIsRejected() throws Exception {
+    session.login(server, client);
+    session.relogin(server, client, session.getLogins());
+    session.relogin(server, client, session.getLogins());
+
+    assertThat(server.logins.get(), is(3));
+  }
+
+  private static class CountingServer extends AbstractServer {
+    private final AtomicInteger logins = new AtomicInteger();
+
+    @Override
+    protected void doLogin(HttpClient client) {
+      logins.incrementAndGet();
+      try {
+        // gives other threads time to reach session, while login is in progress
+        Thread.sleep(20);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    @Override
+    public String getSystem() {
+      return "Test";
+    }
+
+    @Override
+    protected String getBuildUrl(String number) {
+      return null;
+    }
+
+    @Override
+    protected String getLastBuildUrl() {
+      return null;
+    }
+
+    @Override
+    protected Unmarshaller getBuildUnmarshaller() {
+      return null;
+    }
+  }
+}
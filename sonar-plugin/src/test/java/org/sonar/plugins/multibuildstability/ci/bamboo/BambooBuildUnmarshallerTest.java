@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability.ci.bamboo;
+
+import org.junit.Test;
+import org.sonar.plugins.multibuildstability.Build;
+
+import javax.xml.stream.XMLInputFactory;
+import java.io.ByteArrayInputStream;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class BambooBuildUnmarshallerTest {
+  private static final String RESULTS = "<results expand=\"results\"><results size=\"2\" start-index=\"0\" max-result=\"2\">" +
+      "<result key=\"SONAR-DEF-2\" state=\"Failed\" lifeCycleState=\"Finished\" number=\"2\">" +
+      "<buildStartedTime>2011-05-24T16:43:32.123+02:00</buildStartedTime><buildDurationInSeconds>60</buildDurationInSeconds></result>" +
+      "<result key=\"SONAR-DEF-1\" state=\"Successful\" lifeCycleState=\"Finished\" number=\"1\">" +
+      "<buildStartedTime>2010-01-04T11:02:17.114-0600</buildStartedTime><buildDurationInSeconds>30</buildDurationInSeconds></result>" +
+      "</results></results>";
+
+  @Test
+  public void readsListOfResults() throws Exception {
+    List<Build> builds = toModels(RESULTS);
+
+    assertThat(builds.size(), is(2));
+    assertThat(builds.get(0).getNumber(), is(2));
+    assertThat(builds.get(0).isSuccessful(), is(false));
+    assertThat(builds.get(0).getTimestamp(), is(1306248212123L));
+    assertThat(builds.get(0).getDuration(), is(60000d));
+    assertThat(builds.get(1).getNumber(), is(1));
+    assertThat(builds.get(1).isSuccessful(), is(true));
+    assertThat(builds.get(1).getTimestamp(), is(1262624537114L));
+  }
+
+  @Test
+  public void skipsResultWithUnparseableDate() throws Exception {
+    List<Build> builds = toModels("<results><results>" +
+        "<result state=\"Failed\" lifeCycleState=\"Finished\" number=\"2\">" +
+        "<buildStartedTime>24.05.2011 16:43</buildStartedTime><buildDurationInSeconds>60</buildDurationInSeconds></result>" +
+        "<result state=\"Successful\" lifeCycleState=\"Finished\" number=\"1\">" +
+        "<buildStartedTime>2010-01-04T11:02:17.114-0600</buildStartedTime><buildDurationInSeconds>30</buildDurationInSeconds></result>" +
+        "</results></results>");
+
+    assertThat(builds.size(), is(1));
+    assertThat(builds.get(0).getNumber(), is(1));
+  }
+
+  @Test
+  public void runningResultHasNoDurationYet() throws Exception {
+    List<Build> builds = toModels("<results><results>" +
+        "<result state=\"Unknown\" lifeCycleState=\"InProgress\" number=\"3\">" +
+        "<buildStartedTime>2011-05-24T16:43:32.123+02:00</buildStartedTime></result>" +
+        "<result state=\"Failed\" lifeCycleState=\"Finished\" number=\"2\">" +
+        "<buildStartedTime>2011-05-24T16:40:32.123+02:00</buildStartedTime></result>" +
+        "</results></results>");
+
+    assertThat(builds.size(), is(1));
+    assertThat(builds.get(0).getNumber(), is(3));
+    assertThat(builds.get(0).isBuilding(), is(true));
+    assertThat(builds.get(0).getDuration(), is(0d));
+  }
+
+  @Test
+  public void parsesOffsetsAndMissingMilliseconds() throws Exception {
+    assertThat(BambooBuildUnmarshaller.parseDate("2010-01-04T17:02:17.114Z").getTime(), is(1262624537114L));
+    assertThat(BambooBuildUnmarshaller.parseDate("2010-01-04T11:02:17.114-06:00").getTime(), is(1262624537114L));
+    assertThat(BambooBuildUnmarshaller.parseDate("2010-01-04T11:02:17-06:00").getTime(), is(1262624537000L));
+  }
+
+  private static List<Build> toModels(String xml) throws Exception {
+    return new BambooBuildUnmarshaller().toModels(
+        XMLInputFactory.newInstance().createXMLStreamReader(new ByteArrayInputStream(xml.getBytes("UTF-8"))), "result");
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sonar.plugins.multibuildstability.ci.hudson;
+
+import org.dom4j.DocumentHelper;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.plugins.multibuildstability.Build;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class HudsonBuildUnmarshallerTest {
+  private static final String BUILD = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>" +
+      "<freeStyleBuild><action><cause><shortDescription>Started by user \u00e9</shortDescription></cause></action>" +
+      "<building>false</building><duration>60000</duration><number>12</number><result>FAILURE</result>" +
+      "<timestamp>1272891187240</timestamp><changeSet><item><number>1</number></item></changeSet></freeStyleBuild>";
+
+  private static final String BUILDS = "<freeStyleProject>" +
+      "<allBuild><building>true</building><duration>0</duration><number>3</number><timestamp>3000</timestamp></allBuild>" +
+      "<allBuild><building>false</building><duration>20</duration><number>2</number><result>SUCCESS</result><timestamp>2000</timestamp></allBuild>" +
+      "</freeStyleProject>";
+
+  private HudsonBuildUnmarshaller unmarshaller;
+
+  @Before
+  public void setUp() {
+    unmarshaller = new HudsonBuildUnmarshaller();
+  }
+
+  @Test
+  public void streamingSkipsNestedElements() throws Exception {
+    List<Build> builds = unmarshaller.toModels(read(BUILD.getBytes("ISO-8859-1")), null);
+
+    assertThat(builds.size(), is(1));
+    assertThat(builds.get(0).getNumber(), is(12));
+    assertThat(builds.get(0).getTimestamp(), is(1272891187240L));
+    assertThat(builds.get(0).getDuration(), is(60000d));
+    assertThat(builds.get(0).isSuccessful(), is(false));
+    assertThat(builds.get(0).isBuilding(), is(false));
+  }
+
+  @Test
+  public void streamingReadsList() throws Exception {
+    List<Build> builds = unmarshaller.toModels(read(BUILDS.getBytes("UTF-8")), "allBuild");
+
+    assertThat(builds.size(), is(2));
+    assertThat(builds.get(0).getNumber(), is(3));
+    assertThat(builds.get(0).isBuilding(), is(true));
+    assertThat(builds.get(1).getNumber(), is(2));
+    assertThat(builds.get(1).isSuccessful(), is(true));
+  }
+
+  @Test
+  public void domGivesSameResult() throws Exception {
+    Build build = unmarshaller.toModel(DocumentHelper.parseText(BUILD).getRootElement());
+
+    assertThat(build.getNumber(), is(12));
+    assertThat(build.getTimestamp(), is(1272891187240L));
+    assertThat(build.getDuration(), is(60000d));
+    assertThat(build.isSuccessful(), is(false));
+  }
+
+  private static XMLStreamReader read(byte[] bytes) throws Exception {
+    return XMLInputFactory.newInstance().createXMLStreamReader(new ByteArrayInputStream(bytes));
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2010 Evgeny Mandrikov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.sonar.plugins.multibuildstability.ci.hudson;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URLDecoder;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class HudsonServerTest {
+  private HudsonServer server;
+
+  @Before
+  public void setUp() {
+    server = new HudsonServer();
+    server.setHost("http://localhost:8080/hudson");
+    server.setKey("project");
+  }
+
+  @Test
+  public void buildListRequestsRangeOfBuilds() throws Exception {
+    String url = server.getBuildListUrl(100, 50);
+
+    assertThat(URLDecoder.decode(url, "UTF-8"),
+        is("http://localhost:8080/hudson/job/project/api/xml?tree=allBuilds[number,timestamp,duration,result,building]{100,150}"));
+    // brackets and braces are escaped, so URL is valid
+    assertThat(url.matches("[^\\[\\]{}]*"), is(true));
+    assertThat(server.getBuildListElement(), is("allBuild"));
+  }
+
+  @Test
+  public void buildUrl() {
+    assertThat(server.getBuildUrl("12"), is("http://localhost:8080/hudson/job/project/12/api/xml/"));
+    assertThat(server.getLastBuildUrl(), is("http://localhost:8080/hudson/job/project/lastBuild/api/xml/"));
+  }
+}